@@ -10,7 +10,7 @@ public class Archer {
     private String lastName;
 
     private int numberOfZeros;
-    private final int[][] scores = new int[MAX_ROUNDS][MAX_ARROWS];
+    private final int[] scores = new int[MAX_ROUNDS * MAX_ARROWS]; // flat, MAX_ARROWS scores per round
 
     /**
      * Constructs a new instance of Archer and assigns a unique id to the instance.
@@ -37,10 +37,27 @@ public class Archer {
     public void registerScoreForRound(int round, int[] points) {
         //loop through the points and add the scores + round
         for (int i = 0; i < points.length; i++) {
-            this.scores[round - 1][i] = points[i];
+            this.scores[(round - 1) * MAX_ARROWS + i] = points[i];
 
             //calculate how many 0 points there are scored
-            if (this.scores[round - 1][i] == 0) {
+            if (this.scores[(round - 1) * MAX_ARROWS + i] == 0) {
+                numberOfZeros++;
+            }
+        }
+    }
+
+    /**
+     * Registers the points of all arrows of all rounds at once, replacing any earlier registration
+     *
+     * @param points the points shot round by round, MAX_ARROWS points for each of the MAX_ROUNDS rounds.
+     *               The array is only read, so the caller may reuse it for the next archer.
+     */
+    public void registerScoresForAllRounds(int[] points) {
+        numberOfZeros = 0;
+        for (int i = 0; i < this.scores.length; i++) {
+            this.scores[i] = points[i];
+
+            if (this.scores[i] == 0) {
                 numberOfZeros++;
             }
         }
@@ -53,15 +70,23 @@ public class Archer {
      */
     public int getTotalScore() {
         int totalScore = 0;
-        // loop through the rounds and count the scores
-        for (int i = 0; i < MAX_ROUNDS; i++) {
-            for (int j = 0; j < MAX_ARROWS; j++) {
-                totalScore += scores[i][j]; //scores per round added to total
-            }
+        // loop through the arrows of all rounds and count the scores
+        for (int score : scores) {
+            totalScore += score; //scores per arrow added to total
         }
         return totalScore;
     }
 
+    /**
+     * Get the flat scores of all rounds, MAX_ARROWS scores per round
+     * The array is not copied and shall not be changed by the caller
+     *
+     * @return scores
+     */
+    int[] getScores() {
+        return scores;
+    }
+
     /**
      * compares the scores/id of this archer with the scores/id of the other archer according to
      * the scoring scheme: highest total points -> least misses -> earliest registration
@@ -1,15 +1,19 @@
 package nl.hva.ict.ads;
 
 import java.util.*;
+import java.util.function.Function;
 
 public class ChampionSelector {
     private Random randomizer;
+    private SplittableRandom bulkRandomizer;    // unsynchronized generator for the bulk simulation
+    private final int[] pointsBuffer = new int[Archer.MAX_ROUNDS * Archer.MAX_ARROWS];
 
     private List<Archer> archers = new ArrayList<>();
     public List<Archer> getArchers() { return archers; }
 
     public ChampionSelector(long seed) {
         randomizer = new Random(seed);
+        bulkRandomizer = new SplittableRandom(seed);
         Names.reSeed(randomizer.nextLong());
     }
 
@@ -30,6 +34,23 @@ public class ChampionSelector {
         return archers;
     }
 
+    /**
+     * Enrolls all nrOfArchers into the champion selector like enrollArchers,
+     * but lets them shoot through the bulk simulation of letArchersShootAllRounds.
+     * The scores differ from those of enrollArchers with the same seed.
+     * @param nrOfArchers the number of archers in the list.
+     * @return      the complete list of all archers that have been registered in this competition
+     */
+    public List<Archer> enrollArchersInBulk(int nrOfArchers) {
+        List<Archer> newArchers = new ArrayList<>(nrOfArchers);
+        for (int i = 0; i < nrOfArchers; i++) {
+            newArchers.add(new Archer(Names.nextFirstName(), Names.nextSurname()));
+        }
+        letArchersShootAllRounds(newArchers);
+        archers.addAll(newArchers);
+        return archers;
+    }
+
     /**
      * Calculates and shows key results of the competition
      */
@@ -52,6 +73,27 @@ public class ChampionSelector {
         System.out.printf("The top-3 price winners of the competition are: %s\n", archers.subList(0,3));
     }
 
+    /**
+     * Ranks the archers within each category by the scoring scheme
+     * @param category provides the category of an archer, e.g. its age class
+     * @return      the ranking of each category
+     */
+    public <K> Map<K, List<Archer>> rankingsByCategory(Function<Archer, K> category) {
+        return new ArcherSorter().partitionAndSort(archers, category,
+                Archer::compareByHighestTotalScoreWithLeastMissesAndLowestId);
+    }
+
+    /**
+     * Finds the numTops price winners within each category by the scoring scheme
+     * @param numTops  the number of price winners per category
+     * @param category provides the category of an archer, e.g. its age class
+     * @return      the price winners of each category in order of their ranking
+     */
+    public <K> Map<K, List<Archer>> topsByCategory(int numTops, Function<Archer, K> category) {
+        return new ArcherSorter().topsByCategory(numTops, archers, category,
+                Archer::compareByHighestTotalScoreWithLeastMissesAndLowestId);
+    }
+
     /**
      * Simulates the archer shooting all rounds and register the scores confirmed by the judges
      * @param archer
@@ -62,6 +104,21 @@ public class ChampionSelector {
         }
     }
 
+    /**
+     * Simulates all archers shooting all rounds and registers their scores.
+     * All points are drawn into one reusable buffer that is registered for each archer in one go,
+     * so no memory is allocated per archer or per round.
+     * @param archers
+     */
+    public void letArchersShootAllRounds(Collection<Archer> archers) {
+        for (Archer archer : archers) {
+            for (int i = 0; i < pointsBuffer.length; i++) {
+                pointsBuffer[i] = bulkRandomizer.nextInt(11);
+            }
+            archer.registerScoresForAllRounds(pointsBuffer);
+        }
+    }
+
     private int[] shootOneRound() {
         int[] points = new int[Archer.MAX_ARROWS];
         for (int arrow = 0; arrow < Archer.MAX_ARROWS; arrow++) {
@@ -0,0 +1,91 @@
+package nl.hva.ict.ads;
+
+import java.util.List;
+
+/**
+ * Computes the total scores and numbers of zeros of a whole field of archers in one batch
+ * The scores of all archers are kept in one flat array, organised by score slot:
+ * the score of slot s (= (round-1) * MAX_ARROWS + arrow) of archer i is found at scores[s * numArchers + i]
+ * That way the scores of consecutive archers are adjacent, which lets the SIMD lanes of the
+ * Vector API process several archers at once, without any horizontal reduction.
+ * The Vector API is an incubator module, which is only used when the jvm runs with
+ * --add-modules jdk.incubator.vector, otherwise the scalar loops are used.
+ */
+public class ScoreAggregator {
+    public static final int NUM_SLOTS = Archer.MAX_ROUNDS * Archer.MAX_ARROWS;
+
+    private static final boolean VECTOR_API_AVAILABLE =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /**
+     * Copies the scores of all archers into the flat, slot organised layout
+     *
+     * @param archers
+     * @return the flat array of NUM_SLOTS * archers.size() scores
+     */
+    public static int[] flatten(List<Archer> archers) {
+        int numArchers = archers.size();
+        int[] scores = new int[NUM_SLOTS * numArchers];
+        for (int i = 0; i < numArchers; i++) {
+            int[] archerScores = archers.get(i).getScores();
+            for (int slot = 0; slot < NUM_SLOTS; slot++) {
+                scores[slot * numArchers + i] = archerScores[slot];
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Calculates the total score and the number of zeros of every archer in the flat layout
+     *
+     * @param scores     the flat scores of numArchers archers
+     * @param numArchers
+     * @param totals     receives the total score of archer i at totals[i]
+     * @param zeros      receives the number of zeros of archer i at zeros[i]
+     */
+    public static void aggregate(int[] scores, int numArchers, int[] totals, int[] zeros) {
+        aggregate(scores, numArchers, totals, zeros, VECTOR_API_AVAILABLE);
+    }
+
+    /**
+     * Calculates the total score and the number of zeros of every archer in the flat layout
+     *
+     * @param scores     the flat scores of numArchers archers
+     * @param numArchers
+     * @param totals     receives the total score of archer i at totals[i]
+     * @param zeros      receives the number of zeros of archer i at zeros[i]
+     * @param useVectors whether to use the Vector API, which shall only be true if it is available
+     */
+    static void aggregate(int[] scores, int numArchers, int[] totals, int[] zeros, boolean useVectors) {
+        if (useVectors) {
+            VectorScoreAggregator.aggregate(scores, numArchers, totals, zeros);
+        } else {
+            aggregateScalar(scores, numArchers, totals, zeros, 0);
+        }
+    }
+
+    /**
+     * Scalar version of aggregate, for the archers from position 'from' onwards
+     *
+     * @param scores     the flat scores of numArchers archers
+     * @param numArchers
+     * @param totals     receives the total score of archer i at totals[i]
+     * @param zeros      receives the number of zeros of archer i at zeros[i]
+     * @param from       the first archer to be aggregated
+     */
+    static void aggregateScalar(int[] scores, int numArchers, int[] totals, int[] zeros, int from) {
+        for (int i = from; i < numArchers; i++) {
+            totals[i] = 0;
+            zeros[i] = 0;
+        }
+        // walk the scores slot by slot, so that the array is read sequentially
+        for (int slot = 0; slot < NUM_SLOTS; slot++) {
+            int offset = slot * numArchers;
+            for (int i = from; i < numArchers; i++) {
+                int score = scores[offset + i];
+                totals[i] += score;
+                if (score == 0) zeros[i]++;
+            }
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package nl.hva.ict.ads;
 
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 public interface Sorter<E> {
     List<E> selInsSort(List<E> items, Comparator<E> comparator);
@@ -9,4 +12,8 @@ public interface Sorter<E> {
     default List<E> topsHeapSort(int numTops, List<E> items, Comparator<E> comparator) {
         return quickSort(items, comparator);
     }
+    List<E> reposition(List<E> items, int index, Comparator<E> comparator);
+    List<E> repositionAll(List<E> items, Collection<Integer> indices, Comparator<E> comparator);
+    <K> Map<K, List<E>> partitionAndSort(List<E> items, Function<E, K> categoryKey, Comparator<E> comparator);
+    <K> Map<K, List<E>> topsByCategory(int numTops, List<E> items, Function<E, K> categoryKey, Comparator<E> comparator);
 }
@@ -1,7 +1,12 @@
 package nl.hva.ict.ads;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 public class SorterImpl<E> implements Sorter<E> {
 
@@ -101,6 +106,166 @@ public class SorterImpl<E> implements Sorter<E> {
         items.set(to, t);
     }
 
+    /**
+     * Moves a single changed item back into its sorted position
+     * All other items are assumed to be sorted already according to the comparator,
+     * e.g. after the score of one archer has been corrected in a ranking.
+     * The new position is found by binary search, after which the items in between are shifted by one
+     *
+     * @param items      list of items, sorted apart from the item at index
+     * @param index      the position of the changed item
+     * @param comparator to compare
+     * @return the items sorted in place
+     */
+    public List<E> reposition(List<E> items, int index, Comparator<E> comparator) {
+        E item = items.get(index);
+        int target = index;
+
+        if (index > 0 && comparator.compare(item, items.get(index - 1)) < 0) {
+            // the item has moved towards the front, search its position in items[0..index-1]
+            target = upperBound(items, 0, index, item, comparator);
+            for (int i = index; i > target; i--) {
+                items.set(i, items.get(i - 1)); // shift towards the back
+            }
+        } else if (index < items.size() - 1 && comparator.compare(item, items.get(index + 1)) > 0) {
+            // the item has moved towards the back, search its position in items[index+1..size-1]
+            target = upperBound(items, index + 1, items.size(), item, comparator) - 1;
+            for (int i = index; i < target; i++) {
+                items.set(i, items.get(i + 1)); // shift towards the front
+            }
+        }
+        items.set(target, item);
+        return items;
+    }
+
+    /**
+     * Moves a batch of changed items back into their sorted positions
+     * All items that are not in the batch are assumed to be sorted already according to the comparator.
+     * The k changed items are taken out and sorted among themselves, after which they are merged
+     * with the unchanged items from the back of the list, which costs O(k log k + n) instead of O(n log n).
+     * Only an auxiliary list of the k changed items is used.
+     *
+     * @param items      list of items, sorted apart from the items at the given indices
+     * @param indices    the positions of the changed items
+     * @param comparator to compare
+     * @return the items sorted in place
+     */
+    public List<E> repositionAll(List<E> items, Collection<Integer> indices, Comparator<E> comparator) {
+        int[] changedIndices = indices.stream().mapToInt(Integer::intValue).distinct().sorted().toArray();
+        if (changedIndices.length == 0) return items;
+        if (changedIndices.length == 1) return reposition(items, changedIndices[0], comparator);
+
+        // take out the changed items and compact the unchanged items towards the front
+        // items before the first changed index do not have to move at all
+        List<E> changed = new ArrayList<>(changedIndices.length);
+        int next = 0;
+        int write = changedIndices[0];
+        for (int read = changedIndices[0]; read < items.size(); read++) {
+            if (next < changedIndices.length && changedIndices[next] == read) {
+                changed.add(items.get(read));
+                next++;
+            } else {
+                items.set(write++, items.get(read));
+            }
+        }
+        quickSort(changed, comparator);
+
+        // merge both sorted sequences from the back, so that no unchanged item is overwritten before it is moved
+        int i = write - 1;
+        int j = changed.size() - 1;
+        for (write = items.size() - 1; j >= 0; write--) {
+            if (i >= 0 && comparator.compare(items.get(i), changed.get(j)) > 0) {
+                items.set(write, items.get(i--));
+            } else {
+                items.set(write, changed.get(j--));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Partitions all items into segments by their category key and sorts each segment by quick sort
+     * using the provided comparator, e.g. to rank archers within their own category.
+     * The items are bucketed in one linear pass, after which the segments are sorted independently and in parallel.
+     * The original list is left unchanged.
+     *
+     * @param items       list of items
+     * @param categoryKey provides the category of an item
+     * @param comparator  to compare items within a category
+     * @param <K>         the (generic) type of the category key
+     * @return the sorted segments by category, in order of first appearance of each category in items
+     */
+    public <K> Map<K, List<E>> partitionAndSort(List<E> items, Function<E, K> categoryKey, Comparator<E> comparator) {
+        Map<K, List<E>> segments = partition(items, categoryKey);
+
+        segments.values().parallelStream()
+                .forEach(segment -> quickSort(segment, comparator)); // each segment is sorted by its own thread
+        return segments;
+    }
+
+    /**
+     * Partitions all items into segments by their category key and finds the numTops leading items of each segment
+     * with topsHeapSort, without sorting the segments or the list as a whole.
+     * The original list is left unchanged.
+     *
+     * @param numTops     the size of the lead collection to be found in each category
+     * @param items       list of items
+     * @param categoryKey provides the category of an item
+     * @param comparator  to compare items within a category
+     * @param <K>         the (generic) type of the category key
+     * @return the sorted lead collection of (at most) numTops items by category,
+     * in order of first appearance of each category in items
+     */
+    public <K> Map<K, List<E>> topsByCategory(int numTops, List<E> items, Function<E, K> categoryKey, Comparator<E> comparator) {
+        Map<K, List<E>> segments = partition(items, categoryKey);
+
+        segments.values().parallelStream()
+                .forEach(segment -> topsHeapSort(numTops, segment, comparator));
+        // drop the tails that did not make it into the lead collections
+        segments.replaceAll((category, segment) ->
+                new ArrayList<>(segment.subList(0, Math.max(0, Math.min(numTops, segment.size())))));
+        return segments;
+    }
+
+    /**
+     * Buckets all items by their category key in one linear pass
+     *
+     * @param items       list of items
+     * @param categoryKey provides the category of an item
+     * @param <K>         the (generic) type of the category key
+     * @return a new list of items for each category, in order of first appearance of each category in items
+     */
+    private <K> Map<K, List<E>> partition(List<E> items, Function<E, K> categoryKey) {
+        Map<K, List<E>> segments = new LinkedHashMap<>();
+        for (E item : items) {
+            segments.computeIfAbsent(categoryKey.apply(item), category -> new ArrayList<>()).add(item);
+        }
+        return segments;
+    }
+
+    /**
+     * Finds the first position in items[from..to-1] holding an item that is greater than the given item
+     * items[from..to-1] must be sorted according to the comparator
+     *
+     * @param items      list of items
+     * @param from       first position of the search range (inclusive)
+     * @param to         end of the search range (exclusive)
+     * @param item       the item to find the position for
+     * @param comparator to compare
+     * @return the position after all items that are less than or equal to item
+     */
+    private int upperBound(List<E> items, int from, int to, E item, Comparator<E> comparator) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (comparator.compare(items.get(middle), item) <= 0) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
     /**
      * Identifies the lead collection of numTops items according to the ordening criteria of comparator
      * and organizes and sorts this lead collection into the first numTops positions of the list
@@ -156,13 +321,12 @@ public class SorterImpl<E> implements Sorter<E> {
             // position 0 holds the root item of a heap of size i+1 organised by reverseComparator
             // this root item is the worst item of the remaining front part of the lead collection
 
-            // TODO swap item[0] and item[i];
-            //  this moves item[0] to its designated position
-
-
-            // TODO the new root may have violated the heap condition
-            //  repair the heap condition on the remaining heap of size i
+            // swap item[0] and item[i], this moves item[0] to its designated position
+            swap(items, 0, i);
 
+            // the new root may have violated the heap condition
+            // repair the heap condition on the remaining heap of size i
+            heapSink(items, i, reverseComparator);
         }
         // alternatively we can realise full ordening with a partial quicksort:
         // quickSortPart(items, 0, numTops-1, comparator);
@@ -182,9 +346,13 @@ public class SorterImpl<E> implements Sorter<E> {
      * @param comparator
      */
     private void heapSwim(List<E> items, int heapSize, Comparator<E> comparator) {
-        // TODO swim items[heapSize-1] up the heap until
+        // swim items[heapSize-1] up the heap until
         //      i==0 || items[(i-1]/2] <= items[i]
-
+        int i = heapSize - 1;
+        while (i > 0 && comparator.compare(items.get((i - 1) / 2), items.get(i)) > 0) {
+            swap(items, i, (i - 1) / 2); // swap with the parent
+            i = (i - 1) / 2;
+        }
     }
 
     /**
@@ -199,8 +367,20 @@ public class SorterImpl<E> implements Sorter<E> {
      * @param comparator
      */
     private void heapSink(List<E> items, int heapSize, Comparator<E> comparator) {
-        // TODO sink items[0] down the heap until
+        // sink items[0] down the heap until
         //      2*i+1>=heapSize || (items[i] <= items[2*i+1] && items[i] <= items[2*i+2])
-
+        int i = 0;
+        while (2 * i + 1 < heapSize) {
+            // pick the smallest child
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && comparator.compare(items.get(child + 1), items.get(child)) < 0) {
+                child++;
+            }
+            if (comparator.compare(items.get(i), items.get(child)) <= 0) {
+                break;
+            }
+            swap(items, i, child); // swap with the smallest child
+            i = child;
+        }
     }
 }
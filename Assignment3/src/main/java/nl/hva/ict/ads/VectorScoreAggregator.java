@@ -0,0 +1,36 @@
+package nl.hva.ict.ads;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static nl.hva.ict.ads.ScoreAggregator.NUM_SLOTS;
+
+/**
+ * SIMD implementation of ScoreAggregator.aggregate with the (incubating) Vector API
+ * Only to be loaded when the jdk.incubator.vector module is available
+ */
+class VectorScoreAggregator {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final IntVector ONES = IntVector.broadcast(SPECIES, 1);
+
+    static void aggregate(int[] scores, int numArchers, int[] totals, int[] zeros) {
+        // each lane accumulates the scores of one archer, so SPECIES.length() archers are done at once
+        int upperBound = SPECIES.loopBound(numArchers);
+        for (int i = 0; i < upperBound; i += SPECIES.length()) {
+            IntVector total = IntVector.zero(SPECIES);
+            IntVector numZeros = IntVector.zero(SPECIES);
+            for (int slot = 0; slot < NUM_SLOTS; slot++) {
+                IntVector score = IntVector.fromArray(SPECIES, scores, slot * numArchers + i);
+                total = total.add(score);
+                VectorMask<Integer> isZero = score.compare(VectorOperators.EQ, 0);
+                numZeros = numZeros.add(ONES, isZero);
+            }
+            total.intoArray(totals, i);
+            numZeros.intoArray(zeros, i);
+        }
+        // the remaining archers do not fill a vector
+        ScoreAggregator.aggregateScalar(scores, numArchers, totals, zeros, upperBound);
+    }
+}
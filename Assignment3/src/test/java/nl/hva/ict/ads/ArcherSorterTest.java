@@ -8,6 +8,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -92,6 +94,75 @@ class ArcherSorterTest {
         assertEquals(manyArchers.subList(0,25), manySortedArchers.subList(0,25));
     }
 
+    @Test
+    void repositionAndCollectionSortResultInSameOrder() {
+        List<Archer> rankedArchers = new ArrayList<>(manyArchers);
+        sorter.quickSort(rankedArchers, scoringScheme);
+
+        // correct a round of an archer in the middle, at the end and at the front of the rankings
+        for (int index : new int[] {120, rankedArchers.size() - 1, 0}) {
+            rankedArchers.get(index).registerScoreForRound(1, new int[] {10, 10, 10});
+            sorter.reposition(rankedArchers, index, scoringScheme);
+            manyArchers.sort(scoringScheme);
+            assertEquals(manyArchers, rankedArchers);
+
+            rankedArchers.get(index).registerScoreForRound(2, new int[] {0, 0, 1});
+            sorter.reposition(rankedArchers, index, scoringScheme);
+            manyArchers.sort(scoringScheme);
+            assertEquals(manyArchers, rankedArchers);
+        }
+    }
+
+    @Test
+    void repositionAllAndCollectionSortResultInSameOrder() {
+        List<Archer> rankedArchers = new ArrayList<>(manyArchers);
+        sorter.quickSort(rankedArchers, scoringScheme);
+
+        List<Integer> changedIndices = List.of(0, 3, 17, 18, 100, 199, rankedArchers.size() - 1);
+        for (int index : changedIndices) {
+            rankedArchers.get(index).registerScoreForRound(index % Archer.MAX_ROUNDS + 1,
+                    new int[] {index % 11, 10 - index % 11, 5});
+        }
+        sorter.repositionAll(rankedArchers, changedIndices, scoringScheme);
+        manyArchers.sort(scoringScheme);
+        assertEquals(manyArchers, rankedArchers);
+
+        sorter.repositionAll(rankedArchers, List.of(), scoringScheme);
+        assertEquals(manyArchers, rankedArchers);
+    }
+
+    @Test
+    void partitionAndSortRanksEachCategoryLikeCollectionSort() {
+        Function<Archer, Character> category = archer -> archer.getLastName().charAt(0);
+        Map<Character, List<Archer>> segments = sorter.partitionAndSort(manyArchers, category, scoringScheme);
+
+        assertEquals(manyArchers.stream().map(category).distinct().collect(Collectors.toList()),
+                List.copyOf(segments.keySet()));
+        for (Map.Entry<Character, List<Archer>> segment : segments.entrySet()) {
+            assertEquals(manyArchers.stream()
+                            .filter(archer -> category.apply(archer).equals(segment.getKey()))
+                            .sorted(scoringScheme)
+                            .collect(Collectors.toList()),
+                    segment.getValue());
+        }
+    }
+
+    @Test
+    void topsByCategoryFindsTheLeadersOfEachCategory() {
+        Function<Archer, Integer> category = archer -> archer.getId() % 4;
+        Map<Integer, List<Archer>> tops = sorter.topsByCategory(5, manyArchers, category, scoringScheme);
+
+        assertEquals(4, tops.size());
+        for (Map.Entry<Integer, List<Archer>> segment : tops.entrySet()) {
+            assertEquals(manyArchers.stream()
+                            .filter(archer -> category.apply(archer).equals(segment.getKey()))
+                            .sorted(scoringScheme)
+                            .limit(5)
+                            .collect(Collectors.toList()),
+                    segment.getValue());
+        }
+    }
+
     @Test
     public void quickSortCanHandleManyDuplicates() {
         List<Archer> duplicateArchers = new ArrayList<>();
@@ -91,6 +91,21 @@ public class ArcherTest {
         assertEquals(177, archer1.getTotalScore());
     }
 
+    @Test
+    void registerScoresForAllRoundsReplacesEarlierScores() {
+        int[] points = new int[Archer.MAX_ROUNDS * Archer.MAX_ARROWS];
+        for (int round = 1; round <= Archer.MAX_ROUNDS; round++) {
+            archer1.registerScoreForRound(round, scores1);
+            System.arraycopy(scores4, 0, points, (round - 1) * Archer.MAX_ARROWS, Archer.MAX_ARROWS);
+        }
+        points[0] = 0;
+
+        archer1.registerScoresForAllRounds(points);
+        points[1] = 0;
+        assertEquals(145, archer1.getTotalScore());
+        assertEquals(1, archer1.getNumberOfZeros());
+    }
+
     @Test
     void archersShouldKeepTheirOwnPoints() {
         int[] points = {10, 10, 10};
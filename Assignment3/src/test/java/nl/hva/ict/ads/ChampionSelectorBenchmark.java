@@ -0,0 +1,58 @@
+package nl.hva.ict.ads;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the round by round simulation against the bulk simulation of ChampionSelector
+ * The regression gate (mvn -P benchmark verify) only compares the times of these benchmarks,
+ * the bulk simulation staying free of allocations is checked by ChampionSelectorTest.
+ * Run main for the GC profiler, gc.alloc.rate.norm shows the bytes allocated per archer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(ChampionSelectorBenchmark.NUM_ARCHERS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChampionSelectorBenchmark {
+    static final int NUM_ARCHERS = 10000;
+
+    private ChampionSelector championSelector;
+    private List<Archer> archers;
+
+    @Setup
+    public void setup() {
+        championSelector = new ChampionSelector(19670427L);
+        archers = new ArrayList<>(championSelector.enrollArchers(NUM_ARCHERS));
+    }
+
+    @Benchmark
+    public List<Archer> shootRoundByRound() {
+        for (Archer archer : archers) {
+            championSelector.letArcherShootAllRounds(archer);
+        }
+        return archers;
+    }
+
+    @Benchmark
+    public List<Archer> shootInBulk() {
+        championSelector.letArchersShootAllRounds(archers);
+        return archers;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ChampionSelectorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
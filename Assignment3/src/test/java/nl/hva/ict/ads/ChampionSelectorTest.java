@@ -0,0 +1,33 @@
+package nl.hva.ict.ads;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ChampionSelectorTest {
+
+    @Test
+    void bulkShootingAllocatesNothingPerArcher() {
+        // the allocation counter of the current thread is a HotSpot extension of the standard bean
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        ChampionSelector championSelector = new ChampionSelector(19670427L);
+        List<Archer> archers = new ArrayList<>(championSelector.enrollArchersInBulk(10000));
+        long threadId = Thread.currentThread().getId();
+        threads.getThreadAllocatedBytes(threadId);
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        championSelector.letArchersShootAllRounds(archers);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // only the iterator of the list, far less than a single byte per archer
+        assertTrue(allocated < archers.size(), allocated + " bytes allocated for " + archers.size() + " archers");
+    }
+}
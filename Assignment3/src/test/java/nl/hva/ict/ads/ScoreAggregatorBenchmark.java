@@ -0,0 +1,42 @@
+package nl.hva.ict.ads;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar and the SIMD aggregation of totals and zeros across a large field of archers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class ScoreAggregatorBenchmark {
+    @Param({"1000000"})
+    private int numArchers;
+
+    private int[] scores;
+    private int[] totals;
+    private int[] zeros;
+
+    @Setup
+    public void setup() {
+        scores = ScoreAggregator.flatten(new ChampionSelector(19670427L).enrollArchersInBulk(numArchers));
+        totals = new int[numArchers];
+        zeros = new int[numArchers];
+    }
+
+    @Benchmark
+    public int[] scalar() {
+        ScoreAggregator.aggregateScalar(scores, numArchers, totals, zeros, 0);
+        return totals;
+    }
+
+    @Benchmark
+    public int[] vector() {
+        VectorScoreAggregator.aggregate(scores, numArchers, totals, zeros);
+        return totals;
+    }
+}
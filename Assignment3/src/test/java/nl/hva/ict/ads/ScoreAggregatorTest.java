@@ -0,0 +1,51 @@
+package nl.hva.ict.ads;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ScoreAggregatorTest {
+    private List<Archer> archers;
+    private int[] expectedTotals;
+    private int[] expectedZeros;
+
+    @BeforeEach
+    void setup() {
+        // an odd number of archers, so the vector loop always leaves a tail
+        archers = new ArrayList<>(new ChampionSelector(1L).enrollArchersInBulk(1001));
+        expectedTotals = archers.stream().mapToInt(Archer::getTotalScore).toArray();
+        expectedZeros = archers.stream().mapToInt(Archer::getNumberOfZeros).toArray();
+    }
+
+    @Test
+    void aggregateMatchesTheScoresOfEachArcher() {
+        int[] scores = ScoreAggregator.flatten(archers);
+        int[] totals = new int[archers.size()];
+        int[] zeros = new int[archers.size()];
+
+        ScoreAggregator.aggregate(scores, archers.size(), totals, zeros);
+        assertArrayEquals(expectedTotals, totals);
+        assertArrayEquals(expectedZeros, zeros);
+    }
+
+    @Test
+    void vectorAndScalarAggregationAgree() {
+        int[] scores = ScoreAggregator.flatten(archers);
+        int[] totals = new int[archers.size()];
+        int[] zeros = new int[archers.size()];
+
+        // both paths of the dispatch, starting from arrays that hold none of the expected values
+        for (boolean useVectors : new boolean[] {false, true}) {
+            Arrays.fill(totals, -1);
+            Arrays.fill(zeros, -1);
+            ScoreAggregator.aggregate(scores, archers.size(), totals, zeros, useVectors);
+            assertArrayEquals(expectedTotals, totals, useVectors ? "vector" : "scalar");
+            assertArrayEquals(expectedZeros, zeros, useVectors ? "vector" : "scalar");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package nl.hva.ict.ads;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the hot sorting paths of SorterImpl on a full competition
+ * These benchmarks are part of the regression gate: mvn -P benchmark verify
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SorterBenchmark {
+    private final Sorter<Archer> sorter = new ArcherSorter();
+    private final Comparator<Archer> scoringScheme = Archer::compareByHighestTotalScoreWithLeastMissesAndLowestId;
+
+    @Param({"100000"})
+    private int numArchers;
+
+    private List<Archer> archers;
+    private List<Archer> rankedArchers;
+
+    // the archers whose scores change before every invocation of repositionAll
+    private static final int NUM_CHANGED = 16;
+    private final Random random = new Random(19670427L);
+    private final int[] points = new int[ScoreAggregator.NUM_SLOTS];
+    private final List<Integer> changedIndices = new ArrayList<>(NUM_CHANGED);
+
+    @Setup
+    public void setup() {
+        archers = new ArrayList<>(new ChampionSelector(19670427L).enrollArchersInBulk(numArchers));
+        rankedArchers = sorter.quickSort(new ArrayList<>(archers), scoringScheme);
+    }
+
+    @Setup(Level.Invocation)
+    public void changeScores() {
+        // the ranking has been restored by the previous invocation, apart from these archers
+        changedIndices.clear();
+        while (changedIndices.size() < NUM_CHANGED) {
+            int index = random.nextInt(numArchers);
+            if (changedIndices.contains(index)) continue;
+            for (int i = 0; i < points.length; i++) {
+                points[i] = random.nextInt(11);
+            }
+            rankedArchers.get(index).registerScoresForAllRounds(points);
+            changedIndices.add(index);
+        }
+    }
+
+    @Benchmark
+    public List<Archer> quickSort() {
+        return sorter.quickSort(new ArrayList<>(archers), scoringScheme);
+    }
+
+    @Benchmark
+    public List<Archer> repositionAll() {
+        // moves the archers with new scores back into the ranking
+        return sorter.repositionAll(rankedArchers, changedIndices, scoringScheme);
+    }
+}
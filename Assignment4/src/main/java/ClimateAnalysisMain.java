@@ -1,7 +1,11 @@
+import models.ClimateReport;
 import models.ClimateTracker;
-import models.Measurement;
+import models.Quantity;
+import models.Station;
 
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.Month;
 import java.util.Map;
 
 public class ClimateAnalysisMain {
@@ -10,33 +14,47 @@ public class ClimateAnalysisMain {
         System.out.println("Welcome to the HvA Climate Analyser");
 
         ClimateTracker climateTracker = new ClimateTracker();
+        // a next run only parses the files that have changed since this one
+        climateTracker.setVaultCache(Path.of(System.getProperty("java.io.tmpdir"), "knmi-vault.cache"));
 
         climateTracker.importClimateDataFromVault(ClimateAnalysisMain.class.getResource("/knmi").getPath());
 
+        // all aggregations over the complete dataset are computed together in a single pass
+        ClimateReport report = new ClimateReport().setParallel(true);
+        ClimateReport.Result<Map<Station, Integer>> measurementCounts = report.measurementCountsByStation();
+        ClimateReport.Result<Map<Station, LocalDate>> firstDays = report.firstDayByStation();
+        ClimateReport.Result<Map<Station, Integer>> validPrecipitationCounts = report.validValueCountsByStation(Quantity.RH);
+        ClimateReport.Result<Map<Integer, Double>> averageTemperatureTrend = report.annualAverages(Quantity.TG);
+        ClimateReport.Result<Map<Integer, Double>> maxHourlyPrecipitationTrend = report.annualMaxima(Quantity.RHX);
+        ClimateReport.Result<Map<Integer, Double>> maxWindGustTrend = report.annualMaxima(Quantity.FXX);
+        ClimateReport.Result<Map<Month, Double>> solarProfile = report.monthlyAverages(Quantity.SQ);
+        ClimateReport.Result<Integer> coldestYear = report.coldestYear();
+        climateTracker.runReport(report);
+
         System.out.println("\n1. Total Number of measurements by station:\n" +
-                climateTracker.numberOfMeasurementsByStation());
+                measurementCounts.get());
         System.out.println("\n2. First day of measurement by station:\n" +
-                climateTracker.firstDayOfMeasurementByStation());
+                firstDays.get());
 
         System.out.printf("\n3. All-time maximum temperature in de Bilt = %.1f degC\n",
                 climateTracker.findStationById(260).allTimeMaxTemperature());
 
         System.out.println("\n4. Number of valid daily precipitation measurements by station:\n" +
-                climateTracker.numberOfValidValuesByStation(Measurement::getPrecipitation));
+                validPrecipitationCounts.get());
         System.out.printf("\n5. Total precipitation in de Bilt in 1963 = %.0f mm\n",
                 climateTracker.findStationById(260).totalPrecipitationBetween(LocalDate.of(1963,1,1), LocalDate.of(1963,12,31)));
 
         System.out.printf("\n6. Annual trend of average temperatures (in degC):\n%s\n",
-                climateTracker.annualAverageTemperatureTrend());
+                averageTemperatureTrend.get());
         System.out.printf("\n7. Annual trend of maximum hourly precipitation (in mm):\n%s\n",
-                climateTracker.annualMaximumTrend(Measurement::getMaxHourlyPrecipitation));
+                maxHourlyPrecipitationTrend.get());
         System.out.printf("\n8. Annual trend of maximum wind gust (in m/s):\n%s\n",
-                climateTracker.annualMaximumTrend(Measurement::getMaxWindGust));
+                maxWindGustTrend.get());
 
         System.out.printf("\n9. All-time monthly profile of daily solar hours:\n%s\n",
-                climateTracker.allTimeAverageDailySolarByMonth());
+                solarProfile.get());
 
-        System.out.printf("\n10. Coldest year = %d\n", climateTracker.coldestYear());
+        System.out.printf("\n10. Coldest year = %d\n", coldestYear.get());
 
         // mapToCSV("Annual average temperature trend", climateTracker.annualAverageTemperatureTrend());
         // mapToCSV("Annual max hourly precipitation trend", climateTracker.annualMaximumTrend(Measurement::getMaxHourlyPrecipitation));
@@ -0,0 +1,109 @@
+package models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author Costa van Elsas
+ * Memory outside of the Java heap for the packed blocks of the stations
+ * The arena hands out slices of large chunks, which are either allocated directly or mapped from a file.
+ * The garbage collector only sees the chunks and the small buffer views of the blocks, not their content,
+ * so the amount of history that is loaded hardly affects the collections.
+ * Slices are never returned individually: the memory of a block that is packed again is only
+ * released together with the whole arena, when it is no longer referenced.
+ */
+class BlockArena implements Closeable {
+    static final int CHUNK_BYTES = 1 << 20;
+
+    private final FileChannel channel;      // the file of a mapped arena, or null for direct memory
+    private ByteBuffer chunk = null;        // the chunk from which slices are taken
+    private int numChunks = 0;
+    private long allocatedBytes = 0;
+
+    private BlockArena(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @return an arena in direct memory
+     */
+    static BlockArena offHeap() {
+        return new BlockArena(null);
+    }
+
+    /**
+     * creates an arena mapped from a new file, which is deleted when the arena is closed or the program ends
+     *
+     * @param folder the folder in which the file shall be created
+     * @return an arena in mapped memory
+     */
+    static BlockArena mapped(Path folder) {
+        try {
+            Files.createDirectories(folder);
+            Path file = Files.createTempFile(folder, "blocks", ".arena");
+            return new BlockArena(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create block arena in: " + folder, e);
+        }
+    }
+
+    /**
+     * @param numLongs the number of longs, at most CHUNK_BYTES / 8
+     * @return a new buffer of zeroes outside of the heap
+     */
+    synchronized LongBuffer allocate(int numLongs) {
+        int numBytes = numLongs * Long.BYTES;
+        if (chunk == null || chunk.remaining() < numBytes) {
+            chunk = newChunk();
+        }
+        ByteBuffer slice = chunk.slice(chunk.position(), numBytes).order(ByteOrder.nativeOrder());
+        chunk.position(chunk.position() + numBytes);
+        allocatedBytes += numBytes;
+        return slice.asLongBuffer();
+    }
+
+    /**
+     * @return the number of bytes handed out by the arena
+     */
+    synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    boolean isMapped() {
+        return channel != null;
+    }
+
+    /**
+     * stops the arena from growing and deletes the file of a mapped arena
+     * the memory that has been handed out remains valid until it is no longer referenced
+     */
+    @Override
+    public synchronized void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close block arena", e);
+        }
+    }
+
+    private ByteBuffer newChunk() {
+        numChunks++;
+        if (channel == null) return ByteBuffer.allocateDirect(CHUNK_BYTES);
+        try {
+            // mapping beyond the end of the file extends it
+            return channel.map(FileChannel.MapMode.READ_WRITE, (long) (numChunks - 1) * CHUNK_BYTES, CHUNK_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot extend block arena", e);
+        }
+    }
+}
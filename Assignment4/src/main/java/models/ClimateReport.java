@@ -0,0 +1,454 @@
+package models;
+
+import models.MonthlyRollup.Cell;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * @author Costa van Elsas
+ * Report engine that computes several aggregations of the measurements of a set of stations in a single pass
+ * The aggregations are registered first and then run together: every day of every station is visited once,
+ * and all registered aggregations are fed from that visit.
+ * Stations are aggregated independently into partial results, which are merged in the order of the stations.
+ * Therefore the stations can be processed in parallel without changing the outcome.
+ * <p>
+ * Values are aggregated as the raw tenths of the KNMI files, so totals and averages are exact
+ * and identical to those of the individual ClimateTracker methods.
+ */
+public class ClimateReport {
+    private final List<Aggregation<?, ?>> aggregations = new ArrayList<>();
+    private boolean parallel = false;
+
+    /**
+     * the result of a registered aggregation, which becomes available after the report has been run
+     *
+     * @param <R> the type of the result
+     */
+    public interface Result<R> {
+
+        /**
+         * @return the result of the aggregation
+         * @throws IllegalStateException if the report has not been run yet
+         */
+        R get();
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * selects whether the stations will be aggregated in parallel
+     *
+     * @param parallel
+     * @return this report
+     */
+    public ClimateReport setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    /**
+     * registers the number of measurements by station
+     *
+     * @return the result of ClimateTracker.numberOfMeasurementsByStation()
+     */
+    public Result<Map<Station, Integer>> measurementCountsByStation() {
+        return register(new PerStationAggregation<int[], Integer>(() -> new int[1], partial -> partial[0]) {
+            @Override
+            void accept(int[] partial, int epochDay, int year, int month, int[] tenths) {
+                partial[0]++;
+            }
+        });
+    }
+
+    /**
+     * registers the first day of measurement by station, excluding stations without measurements
+     *
+     * @return the result of ClimateTracker.firstDayOfMeasurementByStation()
+     */
+    public Result<Map<Station, LocalDate>> firstDayByStation() {
+        return register(new PerStationAggregation<int[], LocalDate>(() -> new int[]{0, 0},
+                partial -> partial[1] == 0 ? null : EpochDays.toLocalDate(partial[0])) {
+            @Override
+            void accept(int[] partial, int epochDay, int year, int month, int[] tenths) {
+                // the days of a station arrive in order of their date, unless they are fed from files
+                if (partial[1] == 0 || epochDay < partial[0]) {
+                    partial[0] = epochDay;
+                    partial[1] = 1;
+                }
+            }
+        });
+    }
+
+    /**
+     * registers the number of valid values of a quantity by station
+     *
+     * @param quantity
+     * @return the result of ClimateTracker.numberOfValidValuesByStation() for the quantity
+     */
+    public Result<Map<Station, Integer>> validValueCountsByStation(Quantity quantity) {
+        int q = quantity.ordinal();
+        return register(new PerStationAggregation<int[], Integer>(() -> new int[1], partial -> partial[0]) {
+            @Override
+            void accept(int[] partial, int epochDay, int year, int month, int[] tenths) {
+                if (tenths[q] != TimeSeries.MISSING) partial[0]++;
+            }
+        });
+    }
+
+    /**
+     * registers the average of a quantity by year across all stations
+     *
+     * @param quantity
+     * @return the result of ClimateTracker.annualAverageTemperatureTrend() for TG
+     */
+    public Result<Map<Integer, Double>> annualAverages(Quantity quantity) {
+        return register(new CalendarAggregation<Integer>(quantity) {
+            @Override
+            Integer keyOf(int year, int month) {
+                return year;
+            }
+
+            @Override
+            Double valueOf(Cell cell) {
+                return TimeSeries.averageOfTenths(cell.sum, cell.count);
+            }
+        });
+    }
+
+    /**
+     * registers the maximum of a quantity by year across all stations
+     *
+     * @param quantity
+     * @return the result of ClimateTracker.annualMaximumTrend() for the quantity
+     */
+    public Result<Map<Integer, Double>> annualMaxima(Quantity quantity) {
+        return register(new CalendarAggregation<Integer>(quantity) {
+            @Override
+            Integer keyOf(int year, int month) {
+                return year;
+            }
+
+            @Override
+            Double valueOf(Cell cell) {
+                return TimeSeries.fromTenths(cell.max);
+            }
+        });
+    }
+
+    /**
+     * registers the average of a quantity by calendar month across all years and all stations
+     *
+     * @param quantity
+     * @return the result of ClimateTracker.allTimeAverageDailySolarByMonth() for SQ
+     */
+    public Result<Map<Month, Double>> monthlyAverages(Quantity quantity) {
+        return register(new CalendarAggregation<Month>(quantity) {
+            @Override
+            Month keyOf(int year, int month) {
+                return Month.of(month);
+            }
+
+            @Override
+            Double valueOf(Cell cell) {
+                return TimeSeries.averageOfTenths(cell.sum, cell.count);
+            }
+        });
+    }
+
+    /**
+     * registers the coldest year: the year with the lowest sum of daily minimum temperatures below zero
+     *
+     * @return the result of ClimateTracker.coldestYear()
+     */
+    public Result<Integer> coldestYear() {
+        CalendarAggregation<Integer> negativeSums = new CalendarAggregation<>(Quantity.TN) {
+            @Override
+            Integer keyOf(int year, int month) {
+                return year;
+            }
+
+            @Override
+            Double valueOf(Cell cell) {
+                return (double) cell.nonPositiveSum;
+            }
+
+            @Override
+            boolean includes(Cell cell) {
+                return cell.nonPositiveCount > 0;
+            }
+        };
+        register(negativeSums);
+        return () -> negativeSums.get().entrySet().stream() //stream over the years in order
+                .min(Map.Entry.comparingByValue()) //the first year with the lowest sum
+                .map(Map.Entry::getKey).orElse(-1);
+    }
+
+    /**
+     * runs all registered aggregations in a single pass over all days of all stations
+     *
+     * @param stations
+     * @return this report
+     */
+    public ClimateReport run(Collection<Station> stations) {
+        List<Station> stationList = new ArrayList<>(stations);
+        stationList.sort(Comparator.comparingInt(Station::getStn));
+
+        Stream<Station> stationStream = parallel ? stationList.parallelStream() : stationList.stream();
+        List<Object[]> partialsByStation = stationStream
+                .map(this::aggregate)
+                .collect(Collectors.toList());  // keeps the order of the stations
+
+        complete(stationList, partialsByStation);
+        return this;
+    }
+
+    /**
+     * starts a run in which the days are fed to the report one by one, in any order,
+     * instead of being read from the stations
+     *
+     * @param stations all stations to be reported on
+     * @return the feed, which completes the report when it is done
+     */
+    Feed feed(Collection<Station> stations) {
+        return new Feed(stations);
+    }
+
+    /**
+     * a run of the report that receives its days one by one
+     * only the partial results of the stations are kept, not the days themselves
+     */
+    class Feed {
+        private final List<Station> stationList;
+        private final Map<Station, Object[]> partialsByStation = new HashMap<>();
+
+        private Feed(Collection<Station> stations) {
+            stationList = new ArrayList<>(stations);
+            stationList.sort(Comparator.comparingInt(Station::getStn));
+            for (Station station : stationList) {
+                partialsByStation.put(station, newPartials());
+            }
+        }
+
+        /**
+         * feeds the raw values of one day of a station to all registered aggregations
+         *
+         * @param station  one of the stations of the feed
+         * @param epochDay
+         * @param tenths   the raw value of every quantity by its ordinal, or TimeSeries.MISSING
+         */
+        void accept(Station station, int epochDay, int[] tenths) {
+            acceptDay(partialsByStation.get(station), epochDay, tenths);
+        }
+
+        /**
+         * merges the partial results of all stations
+         *
+         * @return the report, with its results available
+         */
+        ClimateReport complete() {
+            List<Object[]> partials = new ArrayList<>(stationList.size());
+            for (Station station : stationList) {
+                partials.add(partialsByStation.get(station));
+            }
+            ClimateReport.this.complete(stationList, partials);
+            return ClimateReport.this;
+        }
+    }
+
+    private void complete(List<Station> stationList, List<Object[]> partialsByStation) {
+        for (int a = 0; a < aggregations.size(); a++) {
+            List<Object> partials = new ArrayList<>(stationList.size());
+            for (Object[] stationPartials : partialsByStation) {
+                partials.add(stationPartials[a]);
+            }
+            aggregations.get(a).complete(stationList, partials);
+        }
+    }
+
+    /**
+     * feeds all days of one station to all registered aggregations
+     *
+     * @param station
+     * @return the partial result of every aggregation for the station
+     */
+    private Object[] aggregate(Station station) {
+        Object[] partials = newPartials();
+        station.forEachDay((epochDay, tenths) -> acceptDay(partials, epochDay, tenths));
+        return partials;
+    }
+
+    private Object[] newPartials() {
+        Object[] partials = new Object[aggregations.size()];
+        for (int a = 0; a < partials.length; a++) {
+            partials[a] = aggregations.get(a).newPartial();
+        }
+        return partials;
+    }
+
+    private void acceptDay(Object[] partials, int epochDay, int[] tenths) {
+        // look up the calendar of the day once for all aggregations
+        int year = EpochDays.yearOf(epochDay);
+        int month = EpochDays.monthOf(epochDay);
+        for (int a = 0; a < partials.length; a++) {
+            aggregations.get(a).acceptRaw(partials[a], epochDay, year, month, tenths);
+        }
+    }
+
+    private <R> Result<R> register(Aggregation<?, R> aggregation) {
+        aggregations.add(aggregation);
+        return aggregation;
+    }
+
+    /**
+     * an aggregation that is computed per station into a partial result of type P,
+     * after which the partial results of all stations are combined into a result of type R
+     */
+    private abstract static class Aggregation<P, R> implements Result<R> {
+        private R result;
+        private boolean completed = false;
+
+        abstract P newPartial();
+
+        abstract void accept(P partial, int epochDay, int year, int month, int[] tenths);
+
+        abstract R combine(List<Station> stations, List<P> partials);
+
+        @SuppressWarnings("unchecked")
+        void acceptRaw(Object partial, int epochDay, int year, int month, int[] tenths) {
+            accept((P) partial, epochDay, year, month, tenths);
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(List<Station> stations, List<Object> partials) {
+            result = combine(stations, (List<P>) partials);
+            completed = true;
+        }
+
+        @Override
+        public R get() {
+            if (!completed) throw new IllegalStateException("The report has not been run");
+            return result;
+        }
+    }
+
+    /**
+     * an aggregation with a value for every station, leaving out the stations without a value
+     */
+    private abstract static class PerStationAggregation<P, V> extends Aggregation<P, Map<Station, V>> {
+        private final Supplier<P> partialFactory;
+        private final Function<P, V> finisher;
+
+        PerStationAggregation(Supplier<P> partialFactory, Function<P, V> finisher) {
+            this.partialFactory = partialFactory;
+            this.finisher = finisher;
+        }
+
+        @Override
+        P newPartial() {
+            return partialFactory.get();
+        }
+
+        @Override
+        Map<Station, V> combine(List<Station> stations, List<P> partials) {
+            Map<Station, V> result = new LinkedHashMap<>();
+            for (int s = 0; s < stations.size(); s++) {
+                V value = finisher.apply(partials.get(s));
+                if (value != null) result.put(stations.get(s), value);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * an aggregation of the valid values of one quantity by calendar period (year or month) across all stations
+     * periods without any valid value are left out, as well as those excluded by the aggregation
+     */
+    private abstract static class CalendarAggregation<K extends Comparable<K>>
+            extends Aggregation<CalendarAggregation.Cells, Map<K, Double>> {
+        private final int q;
+
+        /**
+         * @param quantity the quantity to be aggregated
+         */
+        CalendarAggregation(Quantity quantity) {
+            this.q = quantity.ordinal();
+        }
+
+        abstract K keyOf(int year, int month);
+
+        abstract Double valueOf(Cell cell);
+
+        boolean includes(Cell cell) {
+            return cell.count > 0;
+        }
+
+        /**
+         * the cells of one station by month, which serves both granularities
+         * the cells are indexed by their month counted from the first month of the station
+         */
+        static class Cells {
+            private int firstMonth;     // counted as year * 12 + month - 1
+            private Cell[] cells = new Cell[0];
+
+            Cell get(int year, int month) {
+                int index = year * 12 + month - 1 - firstMonth;
+                if (cells.length == 0) {
+                    firstMonth += index;
+                    index = 0;
+                } else if (index < 0) {
+                    // an earlier month, move the cells towards the end
+                    Cell[] moved = new Cell[cells.length - index];
+                    System.arraycopy(cells, 0, moved, -index, cells.length);
+                    cells = moved;
+                    firstMonth += index;
+                    index = 0;
+                }
+                if (index >= cells.length) {
+                    cells = Arrays.copyOf(cells, Math.max(index + 1, 2 * cells.length));
+                }
+                if (cells[index] == null) {
+                    cells[index] = new Cell();
+                }
+                return cells[index];
+            }
+        }
+
+        @Override
+        Cells newPartial() {
+            return new Cells();
+        }
+
+        @Override
+        void accept(Cells partial, int epochDay, int year, int month, int[] tenths) {
+            int value = tenths[q];
+            if (value == TimeSeries.MISSING) return;
+            partial.get(year, month).add(value);
+        }
+
+        @Override
+        Map<K, Double> combine(List<Station> stations, List<Cells> partials) {
+            Map<K, Cell> cells = new TreeMap<>();
+            for (Cells partial : partials) {
+                for (int index = 0; index < partial.cells.length; index++) {
+                    if (partial.cells[index] == null) continue;
+                    int month = partial.firstMonth + index;
+                    cells.computeIfAbsent(keyOf(month / 12, month % 12 + 1), key -> new Cell()).merge(partial.cells[index]);
+                }
+            }
+
+            Map<K, Double> result = new TreeMap<>();
+            cells.forEach((key, cell) -> {
+                if (includes(cell)) result.put(key, valueOf(cell));
+            });
+            return result;
+        }
+    }
+}
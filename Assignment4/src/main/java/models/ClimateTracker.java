@@ -2,10 +2,16 @@ package models;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.Month;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -14,10 +20,34 @@ import java.util.stream.Collectors;
  * All the functionalities to realise the climate tracker
  */
 public class ClimateTracker {
-    private final String MEASUREMENTS_FILE_PATTERN = ".*\\.txt";
+    private static final String MEASUREMENTS_FILE_PATTERN = ".*\\.txt";
 
     private Map<Integer, Station> stations;        // all available weather stations organised by Station Number (STN)
 
+    /**
+     * the ways in which measurement files can be imported from a vault
+     */
+    public enum ImportMode {
+        SEQUENTIAL,     // one file after the other
+        PARALLEL,       // all files are discovered first, then parsed in parallel and merged by station
+        PIPELINED       // files are read, parsed and merged by concurrent stages connected by bounded queues
+    }
+
+    /**
+     * the memory in which the packed blocks of the measurements are stored
+     */
+    public enum StorageMode {
+        HEAP,           // on the Java heap, managed by the garbage collector
+        OFF_HEAP,       // in direct memory outside of the heap
+        MAPPED          // in a temporary file that is mapped into memory, so the operating system may page it out
+    }
+
+    private ImportMode importMode = ImportMode.SEQUENTIAL;
+    private StorageMode storageMode = StorageMode.HEAP;
+    private BlockArena arena = null;    // the memory of the packed blocks of the last import, or null for the heap
+    private Path vaultCache = null;     // the binary cache of the imported vault, or null if none is used
+    private ImportMetrics importMetrics = null;     // the metrics of the last pipelined import
+
     /**
      * return the stations
      *
@@ -41,6 +71,65 @@ public class ClimateTracker {
         this.stations = new HashMap<>();
     }
 
+    public ImportMode getImportMode() {
+        return importMode;
+    }
+
+    /**
+     * selects how measurement files will be imported by importClimateDataFromVault and importMeasurementsFromVault
+     *
+     * @param importMode
+     */
+    public void setImportMode(ImportMode importMode) {
+        this.importMode = importMode;
+    }
+
+    /**
+     * @return the throughput and queue depths of the stages of the last import in PIPELINED mode,
+     * or null if no such import has been done
+     */
+    public ImportMetrics getImportMetrics() {
+        return importMetrics;
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * selects where importClimateDataFromVault stores the packed blocks of the measurements
+     * only completed blocks move out of the heap, the block summaries and the open block of every station stay on it
+     *
+     * @param storageMode
+     */
+    public void setStorageMode(StorageMode storageMode) {
+        this.storageMode = storageMode;
+    }
+
+    /**
+     * @return the number of bytes of the packed blocks outside of the heap
+     */
+    public long getOffHeapBytes() {
+        return arena == null ? 0 : arena.getAllocatedBytes();
+    }
+
+    public Path getVaultCache() {
+        return vaultCache;
+    }
+
+    /**
+     * selects a binary cache file for importClimateDataFromVault
+     * the measurements of all source files that have not changed since the previous import are loaded from the cache,
+     * only new and changed files are parsed, after which the cache is brought up to date
+     * the cache keeps the measurements by source file, so in PIPELINED mode the new and changed files
+     * are parsed file by file in parallel, as in PARALLEL mode
+     *
+     * @param vaultCache the cache file, or null to always parse all source files
+     */
+    public void setVaultCache(Path vaultCache) {
+        this.vaultCache = vaultCache;
+    }
+
     /**
      * calculates for each station how many Measurement instances have been registered
      *
@@ -72,10 +161,11 @@ public class ClimateTracker {
      * that can be accessed by the mapper.
      * invalid values are registered as Double.NaN. They originate from empty or corrupt data in the source file
      *
-     * @param mapper a getter method that accesses the selected quantity from a Measurement instance
+     * @param mapper a getter method that accesses the selected quantity from a Measurement instance,
+     *               or a Quantity to count in constant time from the cumulative counts of its column
      * @return the number of valid values per station
      */
-    public Map<Station, Integer> numberOfValidValuesByStation(Function<Measurement, Double> mapper) {
+    public Map<Station, Integer> numberOfValidValuesByStation(ToDoubleFunction<Measurement> mapper) {
         return stations.values().stream() //stream over stations
                 .collect(Collectors.toMap(station -> station, 
                         station -> station.numValidValues(mapper), //check if values are correct
@@ -90,11 +180,10 @@ public class ClimateTracker {
      * @return a map(Y,T) that provides for each year Y the average temperature T of that year
      */
     public Map<Integer, Double> annualAverageTemperatureTrend() {
-        return stations.values().stream() //stream over stations
-                .flatMap(station -> station.getMeasurements().stream()) //create a new map and put the measurements in
-                .filter(measurement -> !Double.isNaN(measurement.getAverageTemperature())) //filter on avg temperature and check if its not empty
-                .collect(Collectors.groupingBy(measurement -> measurement.getDate().getYear(), //group per year
-                        Collectors.averagingDouble(Measurement::getAverageTemperature))); //get the average temperature
+        return rollup(Quantity.TG, (year, month) -> year).entrySet().stream() //the totals of every year
+                .collect(Collectors.toMap(Map.Entry::getKey, //get the average temperature per year
+                        entry -> TimeSeries.averageOfTenths(entry.getValue().sum, entry.getValue().count),
+                        (a, b) -> a, TreeMap::new));
     }
 
     /**
@@ -104,14 +193,224 @@ public class ClimateTracker {
      * (this method can be reused for maximum aggregation of different quantities in the Measurement data
      *
      * @param mapper a getter function on the Measurement class
-     *               that selects the appropriate value for the maximum aggregation procedure
+     *               that selects the appropriate value for the maximum aggregation procedure,
+     *               or a Quantity to read the maxima from the rollups
      * @return a map(Y,Q) that provides for each year Y the maximum value Q of the specified quantity
      */
-    public Map<Integer, Double> annualMaximumTrend(Function<Measurement, Double> mapper) {
+    public Map<Integer, Double> annualMaximumTrend(ToDoubleFunction<Measurement> mapper) {
+        if (mapper instanceof Quantity) return annualMaximumTrend((Quantity) mapper);
+
+        Map<Integer, Double> maxima = new TreeMap<>();
+        for (Station station : stations.values()) {
+            // the days of a station arrive in order, so the maximum of a year is kept until the next year starts
+            double[] yearMaximum = {Double.NaN, Double.NaN};    // the year and its maximum value so far
+            station.forEachValue(mapper, (measurement, value) -> {
+                int year = EpochDays.yearOf(measurement.getEpochDay());
+                if (year != yearMaximum[0]) {
+                    if (!Double.isNaN(yearMaximum[0])) maxima.merge((int) yearMaximum[0], yearMaximum[1], Double::max);
+                    yearMaximum[0] = year;
+                    yearMaximum[1] = value;
+                } else {
+                    yearMaximum[1] = Math.max(yearMaximum[1], value);
+                }
+            });
+            if (!Double.isNaN(yearMaximum[0])) maxima.merge((int) yearMaximum[0], yearMaximum[1], Double::max);
+        }
+        return maxima;
+    }
+
+    /**
+     * Calculates for each calendar year in the dataset the maximum of the selected daily quantity
+     * across all days in the year and all stations in this tracker
+     * from the monthly rollups of the stations instead of scanning all measurements
+     *
+     * @param quantity the quantity to be maximised
+     * @return a map(Y,Q) that provides for each year Y the maximum value Q of the specified quantity
+     */
+    public Map<Integer, Double> annualMaximumTrend(Quantity quantity) {
+        return rollup(quantity, (year, month) -> year).entrySet().stream() //the totals of every year
+                .collect(Collectors.toMap(Map.Entry::getKey, //get the maximum per year
+                        entry -> TimeSeries.fromTenths(entry.getValue().max),
+                        (a, b) -> a, TreeMap::new));
+    }
+
+    /**
+     * Calculates for each month in the dataset the average of the selected daily quantity
+     * across all days in the month and all stations in this tracker
+     * (invalid values shall be excluded from the averaging)
+     *
+     * @param quantity the quantity to be averaged
+     * @return a map(M,Q) that provides for each month M the average value Q of the specified quantity
+     */
+    public Map<YearMonth, Double> monthlyAverageTrend(Quantity quantity) {
+        return rollup(quantity, YearMonth::of).entrySet().stream() //the totals of every month
+                .collect(Collectors.toMap(Map.Entry::getKey, //get the average per month
+                        entry -> TimeSeries.averageOfTenths(entry.getValue().sum, entry.getValue().count),
+                        (a, b) -> a, TreeMap::new));
+    }
+
+    /**
+     * finds the measurement with the highest value of a quantity across all stations
+     * between startDate and endDate (inclusive), e.g. the hottest day of a period
+     *
+     * @param startDate the start date of the period (inclusive)
+     * @param endDate   the end date of the period (inclusive)
+     * @param quantity  the quantity to be maximised
+     * @return the measurement with the highest value, the earliest one at the lowest station number on a tie
+     * Optional.empty() if no valid values are available from this period.
+     */
+    public Optional<Measurement> maxBetween(LocalDate startDate, LocalDate endDate, Quantity quantity) {
+        return stations.values().stream() //stream over stations
+                .flatMap(station -> station.maxBetween(startDate, endDate, quantity).stream()) //get the maximum of every station
+                .max(Comparator.comparingDouble(quantity) //keep the highest, and the earliest on a tie
+                        .thenComparing(Measurement::getDate, Comparator.reverseOrder())
+                        .thenComparing(measurement -> measurement.getStation().getStn(), Comparator.reverseOrder()));
+    }
+
+    /**
+     * finds the measurement with the lowest value of a quantity across all stations
+     * between startDate and endDate (inclusive), e.g. the coldest night of a period
+     *
+     * @param startDate the start date of the period (inclusive)
+     * @param endDate   the end date of the period (inclusive)
+     * @param quantity  the quantity to be minimised
+     * @return the measurement with the lowest value, the earliest one at the lowest station number on a tie
+     * Optional.empty() if no valid values are available from this period.
+     */
+    public Optional<Measurement> minBetween(LocalDate startDate, LocalDate endDate, Quantity quantity) {
+        return stations.values().stream() //stream over stations
+                .flatMap(station -> station.minBetween(startDate, endDate, quantity).stream()) //get the minimum of every station
+                .min(Comparator.comparingDouble(quantity) //keep the lowest, and the earliest on a tie
+                        .thenComparing(Measurement::getDate)
+                        .thenComparing(measurement -> measurement.getStation().getStn()));
+    }
+
+    /**
+     * calculates a rolling-window statistic of a quantity across all stations
+     * for every day between startDate and endDate (inclusive), e.g. the 365-day rolling precipitation
+     * the valid values of all stations are merged by day first, after which the window slides over the days once
+     *
+     * @param startDate  the day of the first window (inclusive)
+     * @param endDate    the day of the last window (inclusive)
+     * @param quantity   the quantity to be aggregated
+     * @param windowDays the number of days in every window, which ends at its day and may start before startDate
+     * @param statistic  the statistic to be taken over the valid values of all stations in every window
+     * @return a map(D,V) that provides for each day D the statistic V of the window ending at D, in order of the days
+     * Double.NaN if no valid values are available in the window
+     */
+    public Map<LocalDate, Double> rollingSeries(LocalDate startDate, LocalDate endDate, Quantity quantity,
+                                                int windowDays, RollingWindow.Statistic statistic) {
+        RollingWindow window = new RollingWindow(startDate, endDate, windowDays);
+        for (Station station : stations.values()) {
+            station.addTo(window, quantity);
+        }
+        return window.series(statistic);
+    }
+
+    /**
+     * merges the quantile sketches of a quantity of some stations and years, which are maintained at import,
+     * so percentiles of any union of stations and years can be estimated without visiting any day
+     *
+     * @param quantity the quantity of which the distribution is requested
+     * @param stations the stations to be included
+     * @param fromYear the first year (inclusive)
+     * @param toYear   the last year (inclusive)
+     * @return a new sketch of all valid values of the quantity at the stations in the years
+     */
+    public QuantileSketch quantileSketch(Quantity quantity, Collection<Station> stations, int fromYear, int toYear) {
+        QuantileSketch result = new QuantileSketch();
+        for (Station station : stations) {
+            station.forEachSketch(quantity, fromYear, toYear, (sketch, year) -> result.merge(sketch));
+        }
+        return result;
+    }
+
+    /**
+     * Calculates for each period of consecutive years an estimate of a percentile of the daily values of a quantity
+     * across all days in the period and all stations in this tracker, e.g. the 99th percentile of the daily rainfall per decade
+     * the estimate is merged from the quantile sketches of the years, see QuantileSketch for its accuracy
+     *
+     * @param quantity       the quantity of which the percentile is requested
+     * @param fraction       the fraction of the values at or below the percentile, between 0.0 and 1.0
+     * @param yearsPerPeriod the number of years in a period, the periods start at multiples of it
+     * @return a map(P,Q) that provides for each first year P of a period the percentile Q of the quantity in that period
+     */
+    public Map<Integer, Double> percentileTrend(Quantity quantity, double fraction, int yearsPerPeriod) {
+        if (yearsPerPeriod < 1) {
+            throw new IllegalArgumentException("A period has at least one year");
+        }
+        Map<Integer, QuantileSketch> periods = new TreeMap<>();
+        for (Station station : stations.values()) {
+            station.forEachSketch(quantity, Integer.MIN_VALUE, Integer.MAX_VALUE, (sketch, year) ->
+                    periods.computeIfAbsent(year - Math.floorMod(year, yearsPerPeriod), period -> new QuantileSketch())
+                            .merge(sketch));
+        }
+        return periods.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().quantile(fraction),
+                        (a, b) -> a, TreeMap::new));
+    }
+
+    /**
+     * counts for each station the days with a valid value of a quantity within bounds
+     * across the time period between startDate and endDate (inclusive),
+     * skipping the blocks of days whose minimum and maximum prove that they cannot match
+     *
+     * @param startDate the start date of the period (inclusive)
+     * @param endDate   the end date of the period (inclusive)
+     * @param quantity  the quantity to be compared
+     * @param lower     the lowest matching value (inclusive), or Double.NEGATIVE_INFINITY
+     * @param upper     the highest matching value (inclusive), or Double.POSITIVE_INFINITY
+     * @return a map(S,N) that provides for each station S the number of days N within the bounds
+     */
+    public Map<Station, Integer> numberOfDaysWithinByStation(LocalDate startDate, LocalDate endDate, Quantity quantity,
+                                                             double lower, double upper) {
         return stations.values().stream() //stream over stations
-                .flatMap(station -> station.getMeasurements().stream()) //create a new map and put the measurements in
-                .filter(measurement -> !Double.isNaN(mapper.apply(measurement)))//filter and check if its not empty
-                .collect(Collectors.toMap(measurement -> measurement.getDate().getYear(), mapper, Double::max)); //return the max double value of a specific year
+                .collect(Collectors.toMap(station -> station,
+                        station -> station.numDaysWithin(startDate, endDate, quantity, lower, upper), //count the matching days
+                        (value1, value2) -> value1, HashMap::new));
+    }
+
+    /**
+     * finds the years in which any station has a day with a valid value of a quantity within bounds,
+     * like the years with frost: yearsWithDaysWithin(Quantity.TN, Double.NEGATIVE_INFINITY, -0.1)
+     * The minimum and maximum of every month in the rollups decide most months:
+     * a month matches if its minimum or maximum is within the bounds, and cannot match if both are on the same side.
+     * Only the other months are scanned, and those skip the blocks that cannot match.
+     *
+     * @param quantity the quantity to be compared
+     * @param lower    the lowest matching value (inclusive), or Double.NEGATIVE_INFINITY
+     * @param upper    the highest matching value (inclusive), or Double.POSITIVE_INFINITY
+     * @return the years with a matching day in order
+     */
+    public SortedSet<Integer> yearsWithDaysWithin(Quantity quantity, double lower, double upper) {
+        int lowerTenths = TimeSeries.lowerBoundOfTenths(lower);
+        int upperTenths = TimeSeries.upperBoundOfTenths(upper);
+        SortedSet<Integer> years = new TreeSet<>();
+        for (Station station : stations.values()) {
+            station.forEachMonth(quantity, (year, month, cell) -> {
+                if (years.contains(year) || cell.max < lowerTenths || cell.min > upperTenths) return;
+                boolean matches = (lowerTenths <= cell.min && cell.min <= upperTenths)
+                        || (lowerTenths <= cell.max && cell.max <= upperTenths);
+                if (!matches) {
+                    // the values of the month surround the bounds, so its days are compared
+                    LocalDate firstDay = LocalDate.of(year, month, 1);
+                    matches = station.numDaysWithin(firstDay, firstDay.plusMonths(1).minusDays(1), quantity, lower, upper) > 0;
+                }
+                if (matches) years.add(year);
+            });
+        }
+        return years;
+    }
+
+    /**
+     * @return how the months of the measurements of all stations have been visited by the filtered scans so far
+     */
+    public ScanStatistics getScanStatistics() {
+        ScanStatistics statistics = new ScanStatistics();
+        for (Station station : stations.values()) {
+            statistics.add(station.getScanStatistics());
+        }
+        return statistics;
     }
 
     /**
@@ -123,11 +422,10 @@ public class ClimateTracker {
      * @return a map(M,SQ) that provides for each month M the average daily sunshine hours SQ across all times
      */
     public Map<Month, Double> allTimeAverageDailySolarByMonth() {
-        return stations.values().stream() //stream over stations
-                .flatMap(station -> station.getMeasurements().stream()  //create a new map and put the measurements in
-                .filter(measurement -> !Double.isNaN(measurement.getSolarHours())))  //filter on avg temperature and check if its not empty
-                .collect(Collectors.groupingBy(measurement -> measurement.getDate().getMonth(), //group by the month
-                        LinkedHashMap::new, Collectors.averagingDouble(Measurement::getSolarHours))); //get the average solar hours linkedhashmap so the months are sorted in order
+        return rollup(Quantity.SQ, (year, month) -> Month.of(month)).entrySet().stream() //the totals of every calendar month
+                .collect(Collectors.toMap(Map.Entry::getKey, //get the average solar hours, the months are sorted in order
+                        entry -> TimeSeries.averageOfTenths(entry.getValue().sum, entry.getValue().count),
+                        (a, b) -> a, TreeMap::new));
     }
 
     /**
@@ -141,14 +439,101 @@ public class ClimateTracker {
      * return -1 if no valid minimum temperature measurements are available
      */
     public int coldestYear() {
-        return stations.values().stream() //stream over stations
-                .flatMap(station -> station.getMeasurements().stream() //create a new map and put the measurements in
-                .filter(measurement -> !Double.isNaN(measurement.getMinTemperature()) && measurement.getMinTemperature() <= 0)) //get the min temperature and check if its not empty and smaller than 0
-                .collect(Collectors.groupingBy(measurement -> measurement.getDate().getYear(), 
-                Collectors.summingDouble(Measurement::getMinTemperature))) //get the min temp per year
-                .entrySet().stream() //stream over entryset
-                .min(Map.Entry.comparingByValue()) //compare values
-                .map(Map.Entry::getKey).orElse(-1); //get the min temp measurement otherwise return -1
+        return rollup(Quantity.TN, (year, month) -> year).entrySet().stream() //stream over the years in order
+                .filter(entry -> entry.getValue().nonPositiveCount > 0) //only years with a minimum temperature below zero
+                .min(Comparator.comparingLong(entry -> entry.getValue().nonPositiveSum)) //get the lowest sum
+                .map(Map.Entry::getKey).orElse(-1); //get the year otherwise return -1
+    }
+
+    /**
+     * combines the monthly rollups of all stations into totals by period
+     *
+     * @param quantity  the quantity to be aggregated
+     * @param periodKey the period of a year and month (1..12)
+     * @return the totals of all periods with a valid value, in order of the periods
+     */
+    private <K extends Comparable<K>> Map<K, MonthlyRollup.Cell> rollup(Quantity quantity,
+                                                                        BiFunction<Integer, Integer, K> periodKey) {
+        Map<K, MonthlyRollup.Cell> cells = new TreeMap<>();
+        for (Station station : stations.values()) {
+            station.forEachMonth(quantity, (year, month, cell) ->
+                    cells.computeIfAbsent(periodKey.apply(year, month), key -> new MonthlyRollup.Cell()).merge(cell));
+        }
+        return cells;
+    }
+
+    /**
+     * runs a report with several aggregations in a single pass over all measurements of all stations
+     *
+     * @param report the report with the registered aggregations
+     * @return the report, with its results available
+     */
+    public ClimateReport runReport(ClimateReport report) {
+        return report.run(stations.values());
+    }
+
+    /**
+     * runs a report over a vault without keeping its measurements
+     * every line is parsed and fed straight into the aggregations of the report, after which it is discarded,
+     * so the memory in use does not grow with the number of measurements in the vault
+     * the stations of the vault are imported, but remain without measurements
+     *
+     * @param folderPath the folder of the vault
+     * @param report     the report with the registered aggregations
+     * @return the report, with its results available
+     * @throws InputMismatchException if a station has more than one measurement of the same day
+     */
+    public ClimateReport streamReport(String folderPath, ClimateReport report) {
+        this.stations.clear();
+        importItemsFromFile(this.stations,
+                folderPath + "/stations.txt", null,
+                Station::fromLine, Station::getStn);
+
+        ClimateReport.Feed feed = report.feed(this.stations.values());
+        Map<Station, DaySet> daysByStation = new HashMap<>();   // to detect duplicates, one bit per day
+        MeasurementParser parser = new MeasurementParser();
+        int[] tenths = new int[MeasurementParser.NUM_VALUES];
+
+        for (File file : findMeasurementFiles(new File(folderPath + "/measurements"), new ArrayList<>())) {
+            byte[] content = MeasurementFileReader.readBytes(file.toPath(), 0);
+            int pos = MeasurementFileReader.skipHeader(content, MeasurementFileReader.HEADER_PREFIX);
+            while (pos < content.length) {
+                int endOfLine = MeasurementFileReader.endOfLine(content, pos);
+                if (parser.parse(content, pos, MeasurementFileReader.trimLineEnd(content, pos, endOfLine))) {
+                    Station station = this.stations.get(parser.getStn());
+                    if (station != null) {
+                        int epochDay = EpochDays.ofDateNumber(parser.getDateNumber());
+                        if (!daysByStation.computeIfAbsent(station, s -> new DaySet()).add(epochDay)) {
+                            throw new InputMismatchException(String.format("Duplicate items found in file %s", file));
+                        }
+                        parser.copyTenths(tenths);
+                        feed.accept(station, epochDay, tenths);
+                    }
+                }
+                pos = endOfLine + 1;
+            }
+        }
+        return feed.complete();
+    }
+
+    /**
+     * the days on which a station has a measurement, as a bit per day
+     */
+    private static class DaySet {
+        private final BitSet fromEpoch = new BitSet();      // the days from 1970-01-01 onwards
+        private final BitSet beforeEpoch = new BitSet();    // the days before, by their complement
+
+        /**
+         * @param epochDay
+         * @return false if the day was present already
+         */
+        private boolean add(int epochDay) {
+            BitSet days = epochDay >= 0 ? fromEpoch : beforeEpoch;
+            int index = epochDay >= 0 ? epochDay : ~epochDay;
+            if (days.get(index)) return false;
+            days.set(index);
+            return true;
+        }
     }
 
     /**
@@ -164,16 +549,125 @@ public class ClimateTracker {
                 folderPath + "/stations.txt", null,
                 Station::fromLine, Station::getStn);
 
+        // the blocks of the previous import are released together with its stations
+        if (arena != null) arena.close();
+        arena = switch (storageMode) {
+            case HEAP -> null;
+            case OFF_HEAP -> BlockArena.offHeap();
+            case MAPPED -> BlockArena.mapped(Path.of(System.getProperty("java.io.tmpdir")));
+        };
+        for (Station station : this.stations.values()) {
+            station.setArena(arena);
+        }
+
         // load all measurements from the folder
-        importMeasurementsFromVault(folderPath + "/measurements");
+        if (vaultCache != null) {
+            importMeasurementsThroughCache(Path.of(folderPath, "stations.txt").toAbsolutePath(), folderPath + "/measurements");
+        } else {
+            importMeasurementsFromVault(folderPath + "/measurements");
+        }
+    }
+
+    /**
+     * imports all measurement files of the vault, taking the unchanged ones from the vault cache
+     * and writes a new cache if any source file has been added, changed or removed
+     *
+     * @param stationsFile the file from which the stations have been imported
+     * @param folderPath   the folder with the measurement files
+     */
+    private void importMeasurementsThroughCache(Path stationsFile, String folderPath) {
+        Map<String, VaultCache.Entry> cachedEntries = VaultCache.read(vaultCache);
+
+        // measurements of unknown stations are not cached, so all entries depend on the stations file
+        VaultCache.Entry stationsEntry = cachedEntries.remove(stationsFile.toString());
+        boolean changed = stationsEntry == null || !stationsEntry.isUpToDate(stationsFile);
+        if (changed) {
+            cachedEntries.clear();
+            stationsEntry = VaultCache.Entry.of(stationsFile, List.of());
+        }
+
+        // take every measurement file from the cache, or parse it if it is new or changed
+        //  the checksum of a parsed file is taken from the bytes that have been read for parsing
+        List<File> files = findMeasurementFiles(new File(folderPath), new ArrayList<>());
+        List<VaultCache.Entry> entries = (importMode != ImportMode.SEQUENTIAL ? files.parallelStream() : files.stream())
+                .map(file -> {
+                    VaultCache.Entry entry = cachedEntries.get(file.getAbsolutePath());
+                    if (entry != null && entry.isUpToDate(file.toPath())) return entry;
+                    MeasurementBatch batch = readMeasurementsFromFile(file.getAbsolutePath(), true);
+                    return VaultCache.Entry.of(file.toPath().toAbsolutePath(), batch.size, batch.checksum, batch.measurements);
+                })
+                .collect(Collectors.toList());
+
+        for (VaultCache.Entry entry : entries) {
+            entry.addTo(this.stations);
+            changed |= entry != cachedEntries.get(entry.getPath());
+        }
+        for (Station station : this.stations.values()) {
+            station.compact();
+        }
+
+        // files that have been removed from the vault also require a new cache
+        if (changed || cachedEntries.size() != entries.size()) {
+            List<VaultCache.Entry> newEntries = new ArrayList<>(entries);
+            newEntries.add(0, stationsEntry);
+            VaultCache.write(vaultCache, newEntries);
+        }
+    }
+
+    /**
+     * starts watching the measurements of a vault that has been imported already,
+     * so that new files and lines that are appended to existing files are added to their stations as they arrive
+     * the watcher only reads the files from their current size onwards
+     *
+     * @param folderPath the folder of the vault
+     * @return the watcher, to be polled for changes and closed when done
+     */
+    public VaultWatcher watchVault(String folderPath) {
+        try {
+            return new VaultWatcher(this, Path.of(folderPath, "measurements"), MEASUREMENTS_FILE_PATTERN);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot watch vault: " + folderPath, e);
+        }
+    }
+
+    /**
+     * adds the measurements of a range of complete lines to their stations
+     * days that are already present at their station are ignored, as files may be published again
+     *
+     * @param content the bytes of a measurement file
+     * @param from    the start of the first line
+     * @param to      the end of the last line
+     * @return the number of days that have been added
+     */
+    int appendMeasurements(byte[] content, int from, int to) {
+        List<Measurement> newMeasurements = parseMeasurements(content, from, to, new ArrayList<>());
+
+        int numAdded = 0;
+        for (List<Measurement> stationMeasurements : newMeasurements.stream()
+                .collect(Collectors.groupingBy(Measurement::getStation, LinkedHashMap::new, Collectors.toList()))
+                .values()) {
+            numAdded += stationMeasurements.get(0).getStation().addMeasurements(stationMeasurements);
+        }
+        return numAdded;
     }
 
     /**
      * traverses the purchases vault recursively and processes every data file that it finds
+     * in the current import mode
      *
      * @param filePath
      */
     public void importMeasurementsFromVault(String filePath) {
+        if (importMode == ImportMode.PARALLEL) {
+            importMeasurementsInParallel(findMeasurementFiles(new File(filePath), new ArrayList<>()));
+            return;
+        }
+        if (importMode == ImportMode.PIPELINED) {
+            ImportPipeline pipeline = ImportPipeline.forProcessors(this.stations);
+            importMetrics = pipeline.getMetrics();
+            pipeline.run(findMeasurementFiles(new File(filePath), new ArrayList<>()));
+            return;
+        }
 
         File file = new File(filePath);
 
@@ -193,6 +687,46 @@ public class ClimateTracker {
         }
     }
 
+    /**
+     * collects all measurement files in the vault recursively
+     *
+     * @param file  the vault folder or a file in it
+     * @param files the list to which the measurement files shall be added
+     * @return files
+     */
+    private static List<File> findMeasurementFiles(File file, List<File> files) {
+        if (file.isDirectory()) {
+            for (File f : Objects.requireNonNullElse(file.listFiles(), new File[0])) {
+                findMeasurementFiles(f, files);
+            }
+        } else if (file.getName().matches(MEASUREMENTS_FILE_PATTERN)) {
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * parses all measurement files in parallel on the common (work-stealing) fork-join pool
+     * and merges the batches into their stations afterwards.
+     * Each station is merged by a single thread, so stations need no locking
+     * and duplicates across files are detected just like in the sequential import.
+     *
+     * @param files
+     */
+    private void importMeasurementsInParallel(List<File> files) {
+        // parse every file into its own batch
+        List<MeasurementBatch> batches = files.parallelStream()
+                .map(file -> readMeasurementsFromFile(file.getAbsolutePath(), false))
+                .filter(batch -> batch.getStation() != null)
+                .collect(Collectors.toList());
+
+        // merge the batches of every station, one station per task
+        batches.stream()
+                .collect(Collectors.groupingBy(MeasurementBatch::getStation))
+                .values().parallelStream()
+                .forEach(stationBatches -> stationBatches.forEach(MeasurementBatch::addToStation));
+    }
+
     /**
      * imports a collection of items from a text file which provides one line for each item
      *
@@ -251,22 +785,100 @@ public class ClimateTracker {
      * @param filePath
      */
     private void importMeasurementsFromFile(String filePath) {
+        readMeasurementsFromFile(filePath, false).addToStation();
+    }
+
+    /**
+     * reads all measurements from the filePath text file, without adding them to their station yet
+     *
+     * @param filePath
+     * @param checksum whether the checksum of the content shall be calculated as well, for the vault cache
+     * @return the batch of measurements of the file
+     */
+    private MeasurementBatch readMeasurementsFromFile(String filePath, boolean checksum) {
+
+        // collect the measurements in a temporary list, to be checked on duplicate dates afterwards
+        List<Measurement> newMeasurements = new ArrayList<>();
+
+        // read the file in bulk and skip the header up to the line starting with "# STN"
+        byte[] content = MeasurementFileReader.readBytes(Path.of(filePath), 0);
+        int pos = MeasurementFileReader.skipHeader(content, MeasurementFileReader.HEADER_PREFIX);
+
+        // convert every remaining line
+        parseMeasurements(content, pos, content.length, newMeasurements);
+
+        // order the measurements by their day, which is the order of most files already
+        //  so measurements with the same date end up next to each other
+        newMeasurements.sort(Comparator.comparingInt(Measurement::getEpochDay));
+        for (int i = 1; i < newMeasurements.size(); i++) {
+            if (newMeasurements.get(i).getEpochDay() == newMeasurements.get(i - 1).getEpochDay()) {
+                throw new InputMismatchException(String.format("Duplicate items found in file %s", filePath));
+            }
+        }
+
+        MeasurementBatch batch = new MeasurementBatch(filePath, newMeasurements);
+        batch.size = content.length;
+        batch.checksum = checksum ? VaultCache.checksum(content) : 0;
+        return batch;
+    }
+
+    /**
+     * converts every line in a range of bytes in place by a single parser
+     * lines that cannot be parsed or that belong to an unknown station are skipped
+     *
+     * @param content
+     * @param from            the start of the first line
+     * @param to              the end of the last line
+     * @param newMeasurements the list to which the measurements shall be added
+     * @return newMeasurements
+     */
+    private List<Measurement> parseMeasurements(byte[] content, int from, int to, List<Measurement> newMeasurements) {
+        MeasurementParser parser = new MeasurementParser();
+        int pos = from;
+        while (pos < to) {
+            int endOfLine = Math.min(to, MeasurementFileReader.endOfLine(content, pos));
+            if (parser.parse(content, pos, MeasurementFileReader.trimLineEnd(content, pos, endOfLine))) {
+                Measurement measurement = parser.toMeasurement(this.stations);
+                if (measurement != null) {
+                    newMeasurements.add(measurement);
+                }
+            }
+            pos = endOfLine + 1;
+        }
+        return newMeasurements;
+    }
+
+    /**
+     * the measurements that have been read from a single file
+     * (all measurements from the same file should belong to the same station)
+     */
+    private static class MeasurementBatch {
+        private final String filePath;
+        private final Collection<Measurement> measurements;
+        private final Station station;
+        private long size;          // the number of bytes that have been read from the file
+        private long checksum;      // the checksum of those bytes, if it has been requested
+
+        private MeasurementBatch(String filePath, Collection<Measurement> measurements) {
+            this.filePath = filePath;
+            this.measurements = measurements;
+            this.station = measurements.stream().findAny().map(Measurement::getStation).orElse(null);
+        }
+
+        private Station getStation() {
+            return station;
+        }
 
-        // create a temporary map to import the measurements, organised by date
-        Map<LocalDate, Measurement> newMeasurementsByDate = new HashMap<>();
-
-        // import all measurements from the specified file into the newMeasurementsByDate map
-        importItemsFromFile(newMeasurementsByDate, filePath, "# STN",
-                s -> Measurement.fromLine(s, this.stations), Measurement::getDate);
-
-        //  add the measurements to their station
-        //  (all measurements from the same file should belong to the same station)
-        if (newMeasurementsByDate.size() > 0) {
-            Station station = newMeasurementsByDate.values().stream().findAny().get().getStation();
-            // add the newMeasurements to the map in the station
-            int numAdded = station.addMeasurements(newMeasurementsByDate.values());
-            if (numAdded != newMeasurementsByDate.size()) {
-                throw new InputMismatchException(String.format("Some items in file %s could not be added", filePath));
+        /**
+         * adds the measurements to their station
+         */
+        private void addToStation() {
+            if (measurements.size() > 0) {
+                // add the newMeasurements to the map in the station
+                int numAdded = station.addMeasurements(measurements);
+                if (numAdded != measurements.size()) {
+                    throw new InputMismatchException(String.format("Some items in file %s could not be added", filePath));
+                }
             }
         }
     }
@@ -0,0 +1,17 @@
+package models;
+
+/**
+ * @author Costa van Elsas
+ * Receives the values of one day of measurements at a station, without a Measurement instance
+ * The array holds a raw value in 0.1 units for every Quantity, indexed by its ordinal, or TimeSeries.MISSING.
+ * It may be reused for the next day, so a consumer should not keep a reference to it.
+ */
+@FunctionalInterface
+interface DailyValuesConsumer {
+
+    /**
+     * @param epochDay the day of the values
+     * @param tenths   the raw values of all quantities
+     */
+    void accept(int epochDay, int[] tenths);
+}
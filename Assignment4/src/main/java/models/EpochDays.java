@@ -0,0 +1,114 @@
+package models;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * @author Costa van Elsas
+ * Calendar arithmetic on days counted from 1970-01-01 (epoch days), which is how the climate model keeps its dates
+ * The year and month of every day between FIRST_YEAR and LAST_YEAR are precomputed in lookup tables,
+ * so bucketing days by year or month is array indexing instead of creating a LocalDate per day.
+ * Days outside of that range are supported through LocalDate.
+ */
+final class EpochDays {
+    static final int FIRST_YEAR = 1850;
+    static final int LAST_YEAR = 2149;
+
+    private static final int FIRST_DAY = (int) LocalDate.of(FIRST_YEAR, 1, 1).toEpochDay();
+    private static final int END_DAY = (int) LocalDate.of(LAST_YEAR + 1, 1, 1).toEpochDay();
+
+    private static final short[] YEARS = new short[END_DAY - FIRST_DAY];   // the year of every day in the range
+    private static final byte[] MONTHS = new byte[END_DAY - FIRST_DAY];    // the month (1..12) of every day in the range
+    private static final int[] MONTH_STARTS = new int[(LAST_YEAR - FIRST_YEAR + 1) * 12 + 1];  // the first day of every month
+
+    static {
+        int day = FIRST_DAY;
+        for (int year = FIRST_YEAR; year <= LAST_YEAR; year++) {
+            for (int month = 1; month <= 12; month++) {
+                MONTH_STARTS[(year - FIRST_YEAR) * 12 + month - 1] = day;
+                int lengthOfMonth = LocalDate.of(year, month, 1).lengthOfMonth();
+                for (int d = 0; d < lengthOfMonth; d++, day++) {
+                    YEARS[day - FIRST_DAY] = (short) year;
+                    MONTHS[day - FIRST_DAY] = (byte) month;
+                }
+            }
+        }
+        MONTH_STARTS[MONTH_STARTS.length - 1] = END_DAY;
+    }
+
+    private EpochDays() {
+    }
+
+    /**
+     * @param epochDay
+     * @return the year of the day
+     */
+    static int yearOf(int epochDay) {
+        return isInTable(epochDay) ? YEARS[epochDay - FIRST_DAY] : LocalDate.ofEpochDay(epochDay).getYear();
+    }
+
+    /**
+     * @param epochDay
+     * @return the month of the day, 1..12
+     */
+    static int monthOf(int epochDay) {
+        return isInTable(epochDay) ? MONTHS[epochDay - FIRST_DAY] : LocalDate.ofEpochDay(epochDay).getMonthValue();
+    }
+
+    /**
+     * @param epochDay
+     * @return the epoch day of the first day of the next month
+     */
+    static int startOfNextMonth(int epochDay) {
+        if (isInTable(epochDay)) {
+            return MONTH_STARTS[(YEARS[epochDay - FIRST_DAY] - FIRST_YEAR) * 12 + MONTHS[epochDay - FIRST_DAY]];
+        }
+        return (int) LocalDate.ofEpochDay(epochDay).withDayOfMonth(1).plusMonths(1).toEpochDay();
+    }
+
+    /**
+     * @param year
+     * @param month 1..12
+     * @param day   1..31
+     * @return the epoch day of the date
+     * @throws DateTimeException if the date is not valid
+     */
+    static int of(int year, int month, int day) {
+        if (year >= FIRST_YEAR && year <= LAST_YEAR && month >= 1 && month <= 12 && day >= 1) {
+            int monthIndex = (year - FIRST_YEAR) * 12 + month - 1;
+            int epochDay = MONTH_STARTS[monthIndex] + day - 1;
+            if (epochDay < MONTH_STARTS[monthIndex + 1]) return epochDay;
+        }
+        // LocalDate supports all other years, and reports invalid dates
+        return (int) LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    /**
+     * @param dateNumber a date as a number YYYYMMDD, like in the KNMI files
+     * @return the epoch day of the date
+     * @throws DateTimeException if the date is not valid
+     */
+    static int ofDateNumber(int dateNumber) {
+        return of(dateNumber / 10000, (dateNumber / 100) % 100, dateNumber % 100);
+    }
+
+    /**
+     * @param epochDay
+     * @return the date of the day, for the public API
+     */
+    static LocalDate toLocalDate(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * @param date
+     * @return the epoch day of the date
+     */
+    static int ofLocalDate(LocalDate date) {
+        return Math.toIntExact(date.toEpochDay());
+    }
+
+    private static boolean isInTable(int epochDay) {
+        return epochDay >= FIRST_DAY && epochDay < END_DAY;
+    }
+}
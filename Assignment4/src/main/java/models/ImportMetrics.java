@@ -0,0 +1,186 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Costa van Elsas
+ * Throughput and queue depth of the stages of a pipelined import
+ * For every stage the time of its workers is split into the time spent working, the time spent waiting for input
+ * (starved by the stage before it) and the time spent waiting for room in the next queue (held back by the stage after it).
+ * The stage that is working most of the time while the others are waiting is the bottleneck of the import.
+ */
+public class ImportMetrics {
+    private final List<Stage> stages = new ArrayList<>();
+    private long startNanos;
+    private long elapsedNanos;
+
+    /**
+     * the metrics of one stage, which are updated by all of its workers concurrently
+     */
+    public class Stage {
+        private final String name;
+        private final int numWorkers;
+        private final LongAdder items = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder starvedNanos = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+        private final LongAdder depthSum = new LongAdder();
+        private final LongAdder depthSamples = new LongAdder();
+        private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+        private Stage(String name, int numWorkers) {
+            this.name = name;
+            this.numWorkers = numWorkers;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getNumWorkers() {
+            return numWorkers;
+        }
+
+        /**
+         * @return the number of items that the stage has produced
+         */
+        public long getItems() {
+            return items.sum();
+        }
+
+        /**
+         * @return the number of bytes of the files that the stage has processed
+         */
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        /**
+         * @return the number of items produced per second of the import
+         */
+        public double getItemsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : getItems() * 1E9 / elapsedNanos;
+        }
+
+        /**
+         * @return the number of megabytes processed per second of the import
+         */
+        public double getMegabytesPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : getBytes() * 1E3 / elapsedNanos;
+        }
+
+        /**
+         * @return the total time of all workers spent on processing
+         */
+        public long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        /**
+         * @return the total time of all workers spent on waiting for input
+         */
+        public long getStarvedNanos() {
+            return starvedNanos.sum();
+        }
+
+        /**
+         * @return the total time of all workers spent on waiting for room in the queue of the next stage
+         */
+        public long getBlockedNanos() {
+            return blockedNanos.sum();
+        }
+
+        /**
+         * @return the largest number of items found in the input queue of the stage
+         */
+        public long getMaxQueueDepth() {
+            return maxDepth.get();
+        }
+
+        /**
+         * @return the average number of items found in the input queue of the stage
+         */
+        public double getAverageQueueDepth() {
+            long samples = depthSamples.sum();
+            return samples == 0 ? 0.0 : (double) depthSum.sum() / samples;
+        }
+
+        void produced(long numItems, long numBytes) {
+            items.add(numItems);
+            bytes.add(numBytes);
+        }
+
+        void busy(long nanos) {
+            busyNanos.add(nanos);
+        }
+
+        void starved(long nanos) {
+            starvedNanos.add(nanos);
+        }
+
+        void blocked(long nanos) {
+            blockedNanos.add(nanos);
+        }
+
+        /**
+         * records the number of items in the input queue of the stage when an item is taken from it
+         *
+         * @param depth
+         */
+        void sampleQueueDepth(int depth) {
+            depthSum.add(depth);
+            depthSamples.increment();
+            maxDepth.accumulate(depth);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s %2d %10d %9.1f/s %8.1f MB/s  busy %7.1f ms  starved %7.1f ms  blocked %7.1f ms  queue %5.1f avg %4d max",
+                    name, numWorkers, getItems(), getItemsPerSecond(), getMegabytesPerSecond(),
+                    getBusyNanos() / 1E6, getStarvedNanos() / 1E6, getBlockedNanos() / 1E6,
+                    getAverageQueueDepth(), getMaxQueueDepth());
+        }
+    }
+
+    Stage addStage(String name, int numWorkers) {
+        Stage stage = new Stage(name, numWorkers);
+        stages.add(stage);
+        return stage;
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+    }
+
+    void finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return the stages in the order of the pipeline
+     */
+    public List<Stage> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * @return the wall clock time of the import
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(String.format("import took %.1f ms%n", elapsedNanos / 1E6));
+        for (Stage stage : stages) {
+            result.append(stage).append(System.lineSeparator());
+        }
+        return result.toString();
+    }
+}
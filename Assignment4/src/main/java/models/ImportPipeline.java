@@ -0,0 +1,279 @@
+package models;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Costa van Elsas
+ * Import of measurement files in a pipeline of three stages that run concurrently
+ * - a reader reads the files in bulk and cuts them into chunks of complete lines
+ * - a pool of parsers converts the chunks into batches of raw values by station
+ * - a pool of mergers adds the batches to their stations; every station belongs to one merger,
+ * so each station is only ever modified by a single thread and needs no locking.
+ * The parsers deliver the batches of a station out of date order, so a merger only packs the blocks of its stations
+ * once all batches have been merged, instead of unpacking and repacking them for every late batch.
+ * The stages are connected by bounded queues: a stage that falls behind holds back the stages before it,
+ * instead of letting the chunks pile up in memory. Every stage reports its throughput and queue depth in the metrics.
+ */
+class ImportPipeline {
+    static final int CHUNK_SIZE = 1 << 18;      // the approximate number of bytes in a chunk
+
+    private static final Chunk END_OF_CHUNKS = new Chunk(null, null, 0, 0);
+    private static final Batch END_OF_BATCHES = new Batch(null, null);
+
+    private final Map<Integer, Station> stations;
+    private final int numParsers;
+    private final BlockingQueue<Chunk> chunks;
+    private final List<BlockingQueue<Batch>> batchQueues = new ArrayList<>();
+    private final AtomicInteger activeParsers;
+
+    private final ImportMetrics metrics = new ImportMetrics();
+    private final ImportMetrics.Stage readStage;
+    private final ImportMetrics.Stage parseStage;
+    private final ImportMetrics.Stage mergeStage;
+
+    /**
+     * a range of complete lines of a file
+     */
+    private static class Chunk {
+        final String source;
+        final byte[] content;
+        final int from;
+        final int to;
+
+        Chunk(String source, byte[] content, int from, int to) {
+            this.source = source;
+            this.content = content;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * the raw values of the days of one station in a chunk
+     */
+    private static class Batch {
+        final Chunk chunk;
+        final Station station;
+        int numDays = 0;
+        int[] epochDays = new int[64];
+        short[][] tenths = new short[MeasurementParser.NUM_VALUES][64];
+
+        Batch(Chunk chunk, Station station) {
+            this.chunk = chunk;
+            this.station = station;
+        }
+
+        void add(int epochDay, int[] dayTenths) {
+            if (numDays == epochDays.length) {
+                epochDays = Arrays.copyOf(epochDays, 2 * numDays);
+                for (int q = 0; q < tenths.length; q++) {
+                    tenths[q] = Arrays.copyOf(tenths[q], 2 * numDays);
+                }
+            }
+            epochDays[numDays] = epochDay;
+            for (int q = 0; q < tenths.length; q++) {
+                tenths[q][numDays] = (short) dayTenths[q];
+            }
+            numDays++;
+        }
+
+        // trims the columns to the number of days, as Station.addDays takes all of them
+        void trim() {
+            epochDays = Arrays.copyOf(epochDays, numDays);
+            for (int q = 0; q < tenths.length; q++) {
+                tenths[q] = Arrays.copyOf(tenths[q], numDays);
+            }
+        }
+    }
+
+    /**
+     * @param stations      the known stations by their number
+     * @param numParsers    the number of parser threads
+     * @param numMergers    the number of merger threads
+     * @param queueCapacity the number of items that every queue can hold
+     */
+    ImportPipeline(Map<Integer, Station> stations, int numParsers, int numMergers, int queueCapacity) {
+        this.stations = stations;
+        this.numParsers = numParsers;
+        this.chunks = new ArrayBlockingQueue<>(queueCapacity);
+        for (int m = 0; m < numMergers; m++) {
+            batchQueues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        this.activeParsers = new AtomicInteger(numParsers);
+
+        readStage = metrics.addStage("read", 1);
+        parseStage = metrics.addStage("parse", numParsers);
+        mergeStage = metrics.addStage("merge", numMergers);
+    }
+
+    /**
+     * @param stations the known stations by their number
+     * @return a pipeline sized to the number of processors
+     */
+    static ImportPipeline forProcessors(Map<Integer, Station> stations) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return new ImportPipeline(stations, Math.max(1, processors - 1), Math.max(1, processors / 4), 2 * processors);
+    }
+
+    ImportMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * imports the measurement files through all stages, and waits until all batches have been merged
+     * the first failure of any stage stops the whole pipeline and is rethrown
+     *
+     * @param files
+     * @throws InputMismatchException if a day is found more than once for the same station
+     */
+    void run(List<File> files) {
+        ExecutorService executor = Executors.newFixedThreadPool(1 + numParsers + batchQueues.size());
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        metrics.start();
+        try {
+            completion.submit(() -> read(files), null);
+            for (int p = 0; p < numParsers; p++) {
+                completion.submit(this::parse, null);
+            }
+            for (BlockingQueue<Batch> batches : batchQueues) {
+                completion.submit(() -> merge(batches), null);
+            }
+
+            for (int task = 0; task < 1 + numParsers + batchQueues.size(); task++) {
+                completion.take().get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Import failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import was interrupted", e);
+        } finally {
+            // stops the other stages after a failure
+            executor.shutdownNow();
+            metrics.finish();
+        }
+    }
+
+    /**
+     * the reader stage: reads every file in bulk and cuts it at line ends into chunks
+     */
+    private void read(List<File> files) {
+        try {
+            for (File file : files) {
+                long start = System.nanoTime();
+                byte[] content = MeasurementFileReader.readBytes(file.toPath(), 0);
+                int pos = MeasurementFileReader.skipHeader(content, MeasurementFileReader.HEADER_PREFIX);
+                readStage.busy(System.nanoTime() - start);
+
+                while (pos < content.length) {
+                    start = System.nanoTime();
+                    int end = Math.min(content.length, MeasurementFileReader.endOfLine(content, Math.min(content.length, pos + CHUNK_SIZE)) + 1);
+                    Chunk chunk = new Chunk(file.getAbsolutePath(), content, pos, end);
+                    readStage.produced(1, end - pos);
+                    readStage.busy(System.nanoTime() - start);
+                    put(chunks, chunk, readStage);
+                    pos = end;
+                }
+            }
+            for (int p = 0; p < numParsers; p++) {
+                put(chunks, END_OF_CHUNKS, readStage);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * a parser worker: converts chunks into batches by station
+     * the last parser to finish tells the mergers that no more batches will come
+     */
+    private void parse() {
+        MeasurementParser parser = new MeasurementParser();
+        int[] tenths = new int[MeasurementParser.NUM_VALUES];
+        try {
+            while (true) {
+                Chunk chunk = take(chunks, parseStage);
+                if (chunk == END_OF_CHUNKS) break;
+
+                long start = System.nanoTime();
+                Map<Station, Batch> batches = new LinkedHashMap<>();
+                byte[] content = chunk.content;
+                for (int pos = chunk.from; pos < chunk.to; ) {
+                    int endOfLine = Math.min(chunk.to, MeasurementFileReader.endOfLine(content, pos));
+                    if (parser.parse(content, pos, MeasurementFileReader.trimLineEnd(content, pos, endOfLine))) {
+                        Station station = stations.get(parser.getStn());
+                        if (station != null) {
+                            parser.copyTenths(tenths);
+                            batches.computeIfAbsent(station, s -> new Batch(chunk, s))
+                                    .add(EpochDays.ofDateNumber(parser.getDateNumber()), tenths);
+                        }
+                    }
+                    pos = endOfLine + 1;
+                }
+                parseStage.produced(batches.size(), chunk.to - chunk.from);
+                parseStage.busy(System.nanoTime() - start);
+
+                for (Batch batch : batches.values()) {
+                    batch.trim();
+                    put(mergerOf(batch.station), batch, parseStage);
+                }
+            }
+            if (activeParsers.decrementAndGet() == 0) {
+                for (BlockingQueue<Batch> batches : batchQueues) {
+                    put(batches, END_OF_BATCHES, parseStage);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * a merger worker: adds the batches of its stations to their stations
+     */
+    private void merge(BlockingQueue<Batch> batches) {
+        Set<Station> merged = new HashSet<>();
+        try {
+            for (Batch batch = take(batches, mergeStage); batch != END_OF_BATCHES; batch = take(batches, mergeStage)) {
+                long start = System.nanoTime();
+                int numAdded = batch.station.addDays(batch.epochDays, batch.tenths);
+                if (numAdded != batch.numDays) {
+                    throw new InputMismatchException(String.format("Some items in file %s could not be added", batch.chunk.source));
+                }
+                merged.add(batch.station);
+                mergeStage.produced(numAdded, 0);
+                mergeStage.busy(System.nanoTime() - start);
+            }
+
+            long start = System.nanoTime();
+            for (Station station : merged) {
+                station.compact();
+            }
+            mergeStage.busy(System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private BlockingQueue<Batch> mergerOf(Station station) {
+        return batchQueues.get(Math.floorMod(station.getStn(), batchQueues.size()));
+    }
+
+    private static <T> void put(BlockingQueue<T> queue, T item, ImportMetrics.Stage stage) throws InterruptedException {
+        long start = System.nanoTime();
+        queue.put(item);
+        stage.blocked(System.nanoTime() - start);
+    }
+
+    private static <T> T take(BlockingQueue<T> queue, ImportMetrics.Stage stage) throws InterruptedException {
+        stage.sampleQueueDepth(queue.size());
+        long start = System.nanoTime();
+        T item = queue.take();
+        stage.starved(System.nanoTime() - start);
+        return item;
+    }
+}
@@ -8,22 +8,8 @@ import java.util.Map;
  * Measurement class
  */
 public class Measurement {
-    private final static int FIELD_STN = 0;
-    private final static int FIELD_YYMMDDDD = 1;
-    private final static int FIELD_FG = 4;
-    private final static int FIELD_FXX = 9;
-    private final static int FIELD_TG = 11;
-    private final static int FIELD_TN = 12;
-    private final static int FIELD_TX = 14;
-    private final static int FIELD_SQ = 18;
-    private final static int FIELD_RH = 22;
-    private final static int FIELD_RHX = 23;
-    private final static int NUM_FIELDS = 24;
-
-    private final static double TIMES_ZERO_ONE = 0.1;
-
     private final Station station;            // col0, STN
-    private final LocalDate date;             // col1, YYMMDDDD
+    private int epochDay;                     // col1, YYMMDDDD, kept as the number of days since 1970-01-01
     private double averageWindSpeed;    // col4, FG in m/s  from 0.1 m/s
     private double maxWindGust;         // col9, FXX in m/s  from 0.1 m/s
     private double averageTemperature;  // col11, TG in degC  from 0.1 degC
@@ -35,7 +21,32 @@ public class Measurement {
 
     public Measurement(Station station, int dateNumber) {
         this.station = station;
-        this.date = LocalDate.of(dateNumber / 10000, (dateNumber / 100) % 100, dateNumber % 100);
+        this.epochDay = EpochDays.ofDateNumber(dateNumber);
+    }
+
+    private Measurement(Station station) {
+        this.station = station;
+    }
+
+    /**
+     * @param station
+     * @param epochDay the day of the measurement
+     * @return a new Measurement instance without values
+     */
+    static Measurement ofEpochDay(Station station, int epochDay) {
+        Measurement measurement = new Measurement(station);
+        measurement.epochDay = epochDay;
+        return measurement;
+    }
+
+    /**
+     * moves a reusable instance to another day of its station
+     * the values of the quantities have to be replaced as well
+     *
+     * @param epochDay
+     */
+    void moveTo(int epochDay) {
+        this.epochDay = epochDay;
     }
 
     /**
@@ -51,33 +62,10 @@ public class Measurement {
      *                      or the record is incomplete or cannot be parsed
      */
     public static Measurement fromLine(String textLine, Map<Integer,Station> stations) {
-        String[] fields = textLine.split(",");
-        if (fields.length < NUM_FIELDS) return null;
-
-        //create new measurement instance and trim the fields. The measurement has a Stations number and date
-       Measurement measurement = new Measurement(stations.get(Integer.parseInt(fields[FIELD_STN].trim())),
-               Integer.parseInt(fields[FIELD_YYMMDDDD].trim()));
-
-               // loop through the fields and -1 values that indicate < 0.05 are replaced by 0.0
-               for (int i = 0; i < fields.length; i++) {
-                    fields[i] = fields[i].trim();
-                    if (fields[i].equals("-1"))
-                        fields[i] = "0.0";
-               }
-
-               // set all the data on the fields
-               // first check if its empty, yes? Return double.nan otherwise parse the double value and * 0.1 so the values are correct
-               measurement.setAverageWindSpeed(fields[FIELD_FG].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[FIELD_FG].trim()) * TIMES_ZERO_ONE);
-               measurement.setMaxWindGust(fields[FIELD_FXX].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[FIELD_FXX].trim()) * TIMES_ZERO_ONE);
-               measurement.setAverageTemperature(fields[FIELD_TG].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[FIELD_TG].trim()) * TIMES_ZERO_ONE);
-               measurement.setMinTemperature(fields[FIELD_TN].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[FIELD_TN].trim())* TIMES_ZERO_ONE);
-               measurement.setMaxTemperature(fields[FIELD_TX].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[FIELD_TX].trim()) * TIMES_ZERO_ONE);
-               measurement.setSolarHours(fields[FIELD_SQ].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[FIELD_SQ].trim()) * TIMES_ZERO_ONE);
-               measurement.setPrecipitation(fields[FIELD_RH].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[FIELD_RH].trim()) * TIMES_ZERO_ONE);
-               measurement.setMaxHourlyPrecipitation(fields[FIELD_RHX].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[FIELD_RHX].trim()) * TIMES_ZERO_ONE);
-
-        //return the new filled measurement
-        return measurement;
+        MeasurementParser parser = new MeasurementParser();
+
+        //scan the fields of the line once and create a new measurement instance from its values
+        return parser.parse(textLine) ? parser.toMeasurement(stations) : null;
     }
 
     public Station getStation() {
@@ -85,7 +73,11 @@ public class Measurement {
     }
 
     public LocalDate getDate() {
-        return date;
+        return EpochDays.toLocalDate(epochDay);
+    }
+
+    int getEpochDay() {
+        return epochDay;
     }
 
     public double getAverageWindSpeed() {
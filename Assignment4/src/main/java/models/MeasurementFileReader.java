@@ -0,0 +1,106 @@
+package models;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * @author Costa van Elsas
+ * Byte level access to KNMI measurement files
+ * Files are read in bulk through a FileChannel and the lines are handed out as positions in the byte array,
+ * so that no String is created per line.
+ */
+class MeasurementFileReader {
+    static final byte[] HEADER_PREFIX = "# STN".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * reads the content of a file from the given offset onwards in one bulk transfer
+     *
+     * @param filePath
+     * @param offset   the number of bytes at the start of the file to be skipped
+     * @return all bytes of the file from the offset
+     */
+    static byte[] readBytes(Path filePath, long offset) {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long size = channel.size() - offset;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Measurement file is too large: " + filePath);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, size));
+            while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+                // keep reading until the buffer is full or the end of the file is reached
+            }
+            return buffer.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read measurement file: " + filePath, e);
+        }
+    }
+
+    /**
+     * finds the first data line after the header line that starts with the header prefix
+     *
+     * @param bytes
+     * @param headerPrefix
+     * @return the position of the line after the header line,
+     * or bytes.length if the header line cannot be found
+     */
+    static int skipHeader(byte[] bytes, byte[] headerPrefix) {
+        for (int pos = 0; pos < bytes.length; pos = endOfLine(bytes, pos) + 1) {
+            if (startsWith(bytes, pos, headerPrefix)) {
+                return Math.min(bytes.length, endOfLine(bytes, pos) + 1);
+            }
+        }
+        return bytes.length;
+    }
+
+    /**
+     * finds the end of a header line that has been written completely, for files that are still growing
+     *
+     * @param bytes
+     * @param to           the end of the complete lines
+     * @param headerPrefix
+     * @return the position of the line after the header line,
+     * or -1 if no complete header line can be found before to
+     */
+    static int endOfCompleteHeader(byte[] bytes, int to, byte[] headerPrefix) {
+        for (int pos = 0; pos < to; pos = endOfLine(bytes, pos) + 1) {
+            if (startsWith(bytes, pos, headerPrefix)) {
+                int endOfLine = endOfLine(bytes, pos);
+                return endOfLine < to ? endOfLine + 1 : -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param bytes
+     * @param pos   a position within a line
+     * @return the position of the line feed that ends the line, or bytes.length for the last line without one
+     */
+    static int endOfLine(byte[] bytes, int pos) {
+        while (pos < bytes.length && bytes[pos] != '\n') pos++;
+        return pos;
+    }
+
+    /**
+     * @param bytes
+     * @param from the start of a line
+     * @param to   the position of its line feed
+     * @return the end of the line content, excluding a carriage return
+     */
+    static int trimLineEnd(byte[] bytes, int from, int to) {
+        return to > from && bytes[to - 1] == '\r' ? to - 1 : to;
+    }
+
+    private static boolean startsWith(byte[] bytes, int pos, byte[] prefix) {
+        if (pos + prefix.length > bytes.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[pos + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+}
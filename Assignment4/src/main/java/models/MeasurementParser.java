@@ -0,0 +1,217 @@
+package models;
+
+import java.util.Map;
+
+/**
+ * @author Costa van Elsas
+ * Parser for the comma separated lines of KNMI daily measurement files
+ * Scans the field positions of a line once and parses the integer fields in place,
+ * without splitting, trimming or creating any strings.
+ * The results of the last parsed line are kept in the parser, which can be reused for the next line.
+ */
+class MeasurementParser {
+    final static int MISSING = Integer.MIN_VALUE;    // the raw value of an empty or corrupt field
+
+    private final static int FIELD_STN = 0;
+    private final static int FIELD_YYMMDDDD = 1;
+    private final static int FIELD_FG = 4;
+    private final static int FIELD_FXX = 9;
+    private final static int FIELD_TG = 11;
+    private final static int FIELD_TN = 12;
+    private final static int FIELD_TX = 14;
+    private final static int FIELD_SQ = 18;
+    private final static int FIELD_RH = 22;
+    private final static int FIELD_RHX = 23;
+    private final static int NUM_FIELDS = 24;
+
+    // the quantity of every field, in the order of the values array
+    final static int FG = Quantity.FG.ordinal(), FXX = Quantity.FXX.ordinal(), TG = Quantity.TG.ordinal(),
+            TN = Quantity.TN.ordinal(), TX = Quantity.TX.ordinal(), SQ = Quantity.SQ.ordinal(),
+            RH = Quantity.RH.ordinal(), RHX = Quantity.RHX.ordinal();
+    final static int NUM_VALUES = Quantity.values().length;
+    private final static int[] VALUE_OF_FIELD = new int[NUM_FIELDS];
+
+    static {
+        java.util.Arrays.fill(VALUE_OF_FIELD, -1);
+        VALUE_OF_FIELD[FIELD_FG] = FG;
+        VALUE_OF_FIELD[FIELD_FXX] = FXX;
+        VALUE_OF_FIELD[FIELD_TG] = TG;
+        VALUE_OF_FIELD[FIELD_TN] = TN;
+        VALUE_OF_FIELD[FIELD_TX] = TX;
+        VALUE_OF_FIELD[FIELD_SQ] = SQ;
+        VALUE_OF_FIELD[FIELD_RH] = RH;
+        VALUE_OF_FIELD[FIELD_RHX] = RHX;
+    }
+
+    private final static double TENTHS = 10.0;
+
+    private int stn;
+    private int dateNumber;
+    private final int[] values = new int[NUM_VALUES];  // raw values in 0.1 units, or MISSING
+
+    // the position of the next character to be scanned and the end of the current line
+    private int pos, end;
+    private CharSequence chars;
+    private byte[] bytes;
+
+    /**
+     * parses a text line
+     *
+     * @param textLine
+     * @return whether the line holds a complete record with a valid station number and date
+     */
+    boolean parse(CharSequence textLine) {
+        this.chars = textLine;
+        this.bytes = null;
+        this.pos = 0;
+        this.end = textLine.length();
+        return parseFields();
+    }
+
+    /**
+     * parses a line from a byte buffer, as read from a file in ASCII
+     *
+     * @param buffer
+     * @param from   the position of the first character of the line
+     * @param to     the position after the last character of the line (excluding the line separator)
+     * @return whether the line holds a complete record with a valid station number and date
+     */
+    boolean parse(byte[] buffer, int from, int to) {
+        this.bytes = buffer;
+        this.chars = null;
+        this.pos = from;
+        this.end = to;
+        return parseFields();
+    }
+
+    int getStn() {
+        return stn;
+    }
+
+    int getDateNumber() {
+        return dateNumber;
+    }
+
+    /**
+     * @param value one of FG, FXX, TG, TN, TX, SQ, RH, RHX
+     * @return the raw value in 0.1 units, 0 for -1 (< 0.05), or MISSING if it was empty, corrupt or out of range
+     */
+    int getRawValue(int value) {
+        return values[value];
+    }
+
+    /**
+     * copies the raw values of the last parsed line as they would be stored in a TimeSeries
+     *
+     * the raw values are already in 0.1 units, so they are copied without converting them
+     *
+     * @param tenths receives the raw value of every quantity by its ordinal, or TimeSeries.MISSING
+     */
+    void copyTenths(int[] tenths) {
+        for (int v = 0; v < NUM_VALUES; v++) {
+            // MISSING is not storable either
+            tenths[v] = isStorable(values[v]) ? values[v] : TimeSeries.MISSING;
+        }
+    }
+
+    /**
+     * @param value one of FG, FXX, TG, TN, TX, SQ, RH, RHX
+     * @return the value converted from 0.1 units, or Double.NaN if it was empty or corrupt
+     */
+    double getValue(int value) {
+        return values[value] == MISSING ? Double.NaN : values[value] / TENTHS;
+    }
+
+    /**
+     * creates a Measurement instance from the last parsed line
+     *
+     * @param stations a map of Stations that can be accessed by station number STN
+     * @return the new Measurement, or null if the station number cannot be resolved
+     */
+    Measurement toMeasurement(Map<Integer, Station> stations) {
+        Station station = stations.get(stn);
+        if (station == null) return null;
+
+        Measurement measurement = new Measurement(station, dateNumber);
+        measurement.setAverageWindSpeed(getValue(FG));
+        measurement.setMaxWindGust(getValue(FXX));
+        measurement.setAverageTemperature(getValue(TG));
+        measurement.setMinTemperature(getValue(TN));
+        measurement.setMaxTemperature(getValue(TX));
+        measurement.setSolarHours(getValue(SQ));
+        measurement.setPrecipitation(getValue(RH));
+        measurement.setMaxHourlyPrecipitation(getValue(RHX));
+        return measurement;
+    }
+
+    private boolean parseFields() {
+        stn = MISSING;
+        dateNumber = MISSING;
+        java.util.Arrays.fill(values, MISSING);
+
+        int field = 0;
+        int numFields = 0;      // the number of fields up to the last one that is not zero-length, as String.split counts
+        while (true) {
+            int start = pos;
+            int value = parseNumber();
+
+            if (field == FIELD_STN) stn = value;
+            else if (field == FIELD_YYMMDDDD) dateNumber = value;
+            else if (field < NUM_FIELDS && VALUE_OF_FIELD[field] >= 0) {
+                // -1 values indicate < 0.05 and are replaced by 0,
+                // values that a TimeSeries cannot store are as corrupt as any other malformed field
+                values[VALUE_OF_FIELD[field]] = value == -1 ? 0 : isStorable(value) ? value : MISSING;
+            }
+
+            // skip any remains of a corrupt field up to the next comma
+            while (pos < end && charAt(pos) != ',') pos++;
+            if (pos > start) numFields = field + 1;
+            // the remaining fields are of no interest once the record is known to be complete
+            if (pos >= end || numFields >= NUM_FIELDS) break;
+            pos++;
+            field++;
+        }
+
+        return numFields >= NUM_FIELDS && stn != MISSING && dateNumber != MISSING;
+    }
+
+    /**
+     * parses an optionally signed integer, surrounded by optional spaces, from pos up to the next comma
+     *
+     * @return the integer value or MISSING if the field is empty or corrupt
+     */
+    private int parseNumber() {
+        while (pos < end && charAt(pos) == ' ') pos++;
+        if (pos >= end || charAt(pos) == ',') return MISSING;
+
+        boolean negative = false;
+        char c = charAt(pos);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            pos++;
+        }
+        int value = 0;
+        int numDigits = 0;
+        while (pos < end && (c = charAt(pos)) >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            numDigits++;
+            pos++;
+        }
+        while (pos < end && charAt(pos) == ' ') pos++;
+
+        if (numDigits == 0 || numDigits > 9 || (pos < end && charAt(pos) != ',')) return MISSING;
+        return negative ? -value : value;
+    }
+
+    /**
+     * @param value a raw value in 0.1 units
+     * @return whether the value fits in the short storage of a TimeSeries, next to its MISSING marker
+     */
+    private static boolean isStorable(int value) {
+        return value > Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+
+    private char charAt(int index) {
+        return bytes != null ? (char) bytes[index] : chars.charAt(index);
+    }
+}
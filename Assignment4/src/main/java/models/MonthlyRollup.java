@@ -0,0 +1,205 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * @author Costa van Elsas
+ * Pre-aggregated totals of the measurements of a single station by calendar month and quantity
+ * For every month and quantity the sum, count, minimum and maximum of the valid raw values are kept,
+ * together with the sum and count of the values at or below zero.
+ * The rollup is maintained while measurements are added, so year- and month-grained queries
+ * read twelve cells per year instead of all days.
+ */
+class MonthlyRollup {
+    private static final int NUM_QUANTITIES = Quantity.values().length;
+    private static final int MIN_CAPACITY = 12 * 10;
+
+    private int originMonth;        // the month at index 0, counted as year * 12 + month - 1
+    private int numMonths = 0;      // the number of months in use
+
+    // the cells by quantity and month index
+    private final long[][] sums = new long[NUM_QUANTITIES][0];
+    private final int[][] counts = new int[NUM_QUANTITIES][0];
+    private final short[][] minima = new short[NUM_QUANTITIES][0];
+    private final short[][] maxima = new short[NUM_QUANTITIES][0];
+    private final long[][] nonPositiveSums = new long[NUM_QUANTITIES][0];
+    private final int[][] nonPositiveCounts = new int[NUM_QUANTITIES][0];
+
+    /**
+     * the aggregate of the valid raw values of a quantity in a calendar period
+     */
+    static class Cell {
+        long sum = 0;
+        int count = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        long nonPositiveSum = 0;    // the sum of the values at or below zero
+        int nonPositiveCount = 0;
+
+        void add(int tenths) {
+            sum += tenths;
+            count++;
+            min = Math.min(min, tenths);
+            max = Math.max(max, tenths);
+            if (tenths <= 0) {
+                nonPositiveSum += tenths;
+                nonPositiveCount++;
+            }
+        }
+
+        void merge(Cell other) {
+            sum += other.sum;
+            count += other.count;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            nonPositiveSum += other.nonPositiveSum;
+            nonPositiveCount += other.nonPositiveCount;
+        }
+    }
+
+    /**
+     * receives the cells of a rollup
+     */
+    @FunctionalInterface
+    interface CellConsumer {
+
+        /**
+         * @param year
+         * @param month 1..12
+         * @param cell  the aggregate of the month, which may be reused for the next month
+         */
+        void accept(int year, int month, Cell cell);
+    }
+
+    /**
+     * adds the values of one day
+     *
+     * @param year
+     * @param month  1..12
+     * @param tenths the raw value of every quantity by its ordinal, or TimeSeries.MISSING
+     */
+    void add(int year, int month, short[] tenths) {
+        int index = reserve(year * 12 + month - 1);
+        for (int q = 0; q < NUM_QUANTITIES; q++) {
+            int value = tenths[q];
+            if (value == TimeSeries.MISSING) continue;
+
+            sums[q][index] += value;
+            minima[q][index] = counts[q][index] == 0 ? (short) value : (short) Math.min(minima[q][index], value);
+            maxima[q][index] = counts[q][index] == 0 ? (short) value : (short) Math.max(maxima[q][index], value);
+            counts[q][index]++;
+            if (value <= 0) {
+                nonPositiveSums[q][index] += value;
+                nonPositiveCounts[q][index]++;
+            }
+        }
+    }
+
+    /**
+     * looks up the aggregate of a single month, e.g. to prune a scan of the days of that month
+     *
+     * @param quantity
+     * @param year
+     * @param month    1..12
+     * @param cell     receives the aggregate of the month, with a count of 0 if it holds no valid value
+     * @return the cell
+     */
+    Cell cellOf(Quantity quantity, int year, int month, Cell cell) {
+        int q = quantity.ordinal();
+        int index = year * 12 + month - 1 - originMonth;
+        cell.count = index >= 0 && index < numMonths ? counts[q][index] : 0;
+        if (cell.count == 0) return cell;
+
+        cell.sum = sums[q][index];
+        cell.min = minima[q][index];
+        cell.max = maxima[q][index];
+        cell.nonPositiveSum = nonPositiveSums[q][index];
+        cell.nonPositiveCount = nonPositiveCounts[q][index];
+        return cell;
+    }
+
+    /**
+     * passes the cells of all months with a valid value of the quantity in order of the months
+     *
+     * @param quantity
+     * @param consumer
+     */
+    void forEachMonth(Quantity quantity, CellConsumer consumer) {
+        int q = quantity.ordinal();
+        Cell cell = new Cell();
+        for (int index = 0; index < numMonths; index++) {
+            if (counts[q][index] == 0) continue;
+
+            cell.sum = sums[q][index];
+            cell.count = counts[q][index];
+            cell.min = minima[q][index];
+            cell.max = maxima[q][index];
+            cell.nonPositiveSum = nonPositiveSums[q][index];
+            cell.nonPositiveCount = nonPositiveCounts[q][index];
+            int month = originMonth + index;
+            consumer.accept(month / 12, month % 12 + 1, cell);
+        }
+    }
+
+    /**
+     * extends the range of the rollup to include the month
+     *
+     * @param month counted as year * 12 + month - 1
+     * @return the index of the month
+     */
+    private int reserve(int month) {
+        if (numMonths == 0) {
+            originMonth = month;
+        }
+        if (month < originMonth) {
+            // move the origin back by whole years at least, the data is imported year by year or in reverse
+            int shift = Math.max(originMonth - month, 12);
+            ensureCapacity(numMonths + shift);
+            for (int q = 0; q < NUM_QUANTITIES; q++) {
+                shift(sums[q], shift);
+                shift(counts[q], shift);
+                shift(minima[q], shift);
+                shift(maxima[q], shift);
+                shift(nonPositiveSums[q], shift);
+                shift(nonPositiveCounts[q], shift);
+            }
+            originMonth -= shift;
+            numMonths += shift;
+        }
+        int index = month - originMonth;
+        if (index >= numMonths) {
+            numMonths = index + 1;
+            ensureCapacity(numMonths);
+        }
+        return index;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= counts[0].length) return;
+        int newCapacity = Math.max(MIN_CAPACITY, Math.max(capacity, counts[0].length * 2));
+        for (int q = 0; q < NUM_QUANTITIES; q++) {
+            sums[q] = Arrays.copyOf(sums[q], newCapacity);
+            counts[q] = Arrays.copyOf(counts[q], newCapacity);
+            minima[q] = Arrays.copyOf(minima[q], newCapacity);
+            maxima[q] = Arrays.copyOf(maxima[q], newCapacity);
+            nonPositiveSums[q] = Arrays.copyOf(nonPositiveSums[q], newCapacity);
+            nonPositiveCounts[q] = Arrays.copyOf(nonPositiveCounts[q], newCapacity);
+        }
+    }
+
+    // moves the months in use shift places towards the end, clearing the months in front
+    private void shift(long[] cells, int shift) {
+        System.arraycopy(cells, 0, cells, shift, numMonths);
+        Arrays.fill(cells, 0, shift, 0L);
+    }
+
+    private void shift(int[] cells, int shift) {
+        System.arraycopy(cells, 0, cells, shift, numMonths);
+        Arrays.fill(cells, 0, shift, 0);
+    }
+
+    private void shift(short[] cells, int shift) {
+        System.arraycopy(cells, 0, cells, shift, numMonths);
+        Arrays.fill(cells, 0, shift, (short) 0);
+    }
+}
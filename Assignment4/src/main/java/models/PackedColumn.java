@@ -0,0 +1,591 @@
+package models;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * @author Costa van Elsas
+ * Column of the raw values of one quantity of a TimeSeries, stored in blocks of BLOCK_SIZE days
+ * A block is open while days are being added to it and then holds its values in a plain short array.
+ * Once sealed, a block is packed: its values are encoded either as offsets from the minimum of the block
+ * or as deltas from the previous day, whichever needs the fewest bits, and bit-packed at that width.
+ * Daily values change slowly and have small ranges, so most quantities need 4 to 9 bits per day.
+ * <p>
+ * Every block carries a header with the number, sum, minimum and maximum of its valid values.
+ * The cumulative counts and sums of the headers and a sparse table of their extremes answer range queries
+ * over the blocks that lie completely inside of the range in constant time; the blocks at the ends of the range
+ * are decoded once, after which cumulative counts and sums within them are kept for the next queries.
+ * Which values are valid is kept in a bitmap; in a packed block an invalid value repeats the previous one,
+ * so missing days cost no bits.
+ */
+class PackedColumn {
+    static final int BLOCK_SHIFT = 10;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;     // 1024 days, almost three years
+
+    private BitSet valid = new BitSet();
+    private Block[] blocks = new Block[0];
+    private Decoded decoded = null;     // the most recently decoded packed block
+    private BlockArena arena = null;    // the memory of the packed blocks, or null to keep them on the heap
+    private Totals totals = null;       // the totals of the blocks, or null if a block has changed since
+    // the cumulative totals within the two most recently used blocks at the ends of a range
+    private Prefix prefix = null;
+    private Prefix otherPrefix = null;
+
+    private static final class Block {
+        short[] raw;        // the values of an open block, with MISSING for invalid ones, or null once packed
+        LongBuffer bits;    // the values of a packed block, on the heap or in an arena
+        int reference;      // the minimum of the block, or the first value if it is delta encoded
+        int width;          // the number of bits per value
+        boolean isDelta;
+
+        // header of the valid values, with positions within the block
+        boolean isStale = true;
+        int count;
+        long sum;
+        int min, max;
+        int argMin = -1, argMax = -1;
+    }
+
+    // a decoded block is immutable once published, so concurrent readers at worst decode a block twice
+    private static final class Decoded {
+        final int index;
+        final short[] values;
+
+        Decoded(int index, short[] values) {
+            this.index = index;
+            this.values = values;
+        }
+    }
+
+    // the cumulative counts and sums of the valid values before every block and sparse tables of the blocks
+    // with the lowest minimum and highest maximum among 2^level blocks, immutable once published
+    private static final class Totals {
+        final int[] countsBefore;
+        final long[] sumsBefore;
+        final int[][] minBlocks;    // [level][i] the block with the lowest minimum of blocks i until i + 2^level, or -1
+        final int[][] maxBlocks;
+
+        Totals(int numBlocks) {
+            countsBefore = new int[numBlocks + 1];
+            sumsBefore = new long[numBlocks + 1];
+            int numLevels = numBlocks == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(numBlocks);
+            minBlocks = new int[numLevels][];
+            maxBlocks = new int[numLevels][];
+        }
+    }
+
+    // the cumulative counts and sums of the valid values before every position of a block, immutable once published
+    private static final class Prefix {
+        final int index;
+        final int[] counts = new int[BLOCK_SIZE + 1];
+        final long[] sums = new long[BLOCK_SIZE + 1];
+
+        Prefix(int index) {
+            this.index = index;
+        }
+    }
+
+    // the valid values in a range of offsets
+    private static final class Summary {
+        int count = 0;
+        long sum = 0;
+        int argMin = -1;
+        int argMax = -1;
+        private int min, max;
+    }
+
+    boolean isValid(int offset) {
+        return valid.get(offset);
+    }
+
+    /**
+     * @param offset
+     * @return the first offset from offset onwards with a valid value, or -1 if there is none
+     */
+    int nextValid(int offset) {
+        return valid.nextSetBit(offset);
+    }
+
+    /**
+     * @param offset
+     * @return the raw value at the offset, MISSING if it is not valid
+     */
+    int get(int offset) {
+        if (!valid.get(offset)) return TimeSeries.MISSING;
+
+        int index = offset >> BLOCK_SHIFT;
+        int position = offset & (BLOCK_SIZE - 1);
+        Block block = blocks[index];
+        if (block.raw != null) return block.raw[position];
+        // frame of reference values can be read without decoding the block
+        if (!block.isDelta) return block.reference + (int) unpack(block.bits, block.width, position);
+        return decode(index)[position];
+    }
+
+    /**
+     * @param index
+     * @return the values of a block with MISSING for invalid ones, which shall not be modified,
+     * or null if the block holds no values
+     */
+    short[] valuesOfBlock(int index) {
+        if (index >= blocks.length || blocks[index] == null) return null;
+        return blocks[index].raw != null ? blocks[index].raw : decode(index);
+    }
+
+    /**
+     * stores a value, reopening its block if that had been packed already
+     *
+     * @param offset
+     * @param value  the raw value, or MISSING
+     */
+    void set(int offset, short value) {
+        int index = offset >> BLOCK_SHIFT;
+        if (value == TimeSeries.MISSING && (index >= blocks.length || blocks[index] == null)) {
+            // nothing is stored for an invalid value in a block that has not been created yet
+            valid.clear(offset);
+            return;
+        }
+
+        Block block = open(index);
+        block.raw[offset & (BLOCK_SIZE - 1)] = value;
+        block.isStale = true;
+        valid.set(offset, value != TimeSeries.MISSING);
+        totals = null;
+        if (prefix != null && prefix.index == index) prefix = null;
+        if (otherPrefix != null && otherPrefix.index == index) otherPrefix = null;
+    }
+
+    /**
+     * counts the valid values in a range in constant time
+     *
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @return the number of valid values in the range
+     */
+    int count(int fromOffset, int toOffset) {
+        Totals totals = totals();
+        return countBefore(totals, toOffset) - countBefore(totals, fromOffset);
+    }
+
+    /**
+     * sums the valid values in a range in constant time
+     *
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @return the exact sum of the valid raw values in the range
+     */
+    long sum(int fromOffset, int toOffset) {
+        Totals totals = totals();
+        return sumBefore(totals, toOffset) - sumBefore(totals, fromOffset);
+    }
+
+    /**
+     * finds the minimum of the valid values in a range from two entries of the sparse table of the blocks
+     * and the values in the blocks at the ends of the range
+     *
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @return the offset of the minimum (the earliest one on a tie), or -1 if the range holds no valid value
+     */
+    int argMin(int fromOffset, int toOffset) {
+        return extreme(fromOffset, toOffset, false).argMin;
+    }
+
+    /**
+     * finds the maximum of the valid values in a range like argMin()
+     *
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @return the offset of the maximum (the earliest one on a tie), or -1 if the range holds no valid value
+     */
+    int argMax(int fromOffset, int toOffset) {
+        return extreme(fromOffset, toOffset, true).argMax;
+    }
+
+    /**
+     * finds the valid values within bounds in a range of offsets, comparing them one by one
+     *
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @param lower      the lowest matching raw value
+     * @param upper      the highest matching raw value
+     * @param action     receives the offsets of the matching values in ascending order, or null if only counting
+     * @return the number of matching values
+     */
+    int filter(int fromOffset, int toOffset, int lower, int upper, IntConsumer action) {
+        int count = 0;
+        int offset = valid.nextSetBit(fromOffset);
+        while (offset >= 0 && offset < toOffset) {
+            // the values are taken block by block
+            int start = offset & -BLOCK_SIZE;
+            short[] values = valuesOfBlock(offset >> BLOCK_SHIFT);
+            int to = Math.min(toOffset, start + BLOCK_SIZE);
+            for (; offset >= 0 && offset < to; offset = valid.nextSetBit(offset + 1)) {
+                int value = values[offset - start];
+                if (value >= lower && value <= upper) {
+                    count++;
+                    if (action != null) action.accept(offset);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * packs all open blocks before the given block
+     *
+     * @param toIndex the first block that remains open
+     */
+    void seal(int toIndex) {
+        for (int index = 0; index < Math.min(toIndex, blocks.length); index++) {
+            if (blocks[index] != null && blocks[index].raw != null) {
+                pack(blocks[index], index);
+            }
+        }
+    }
+
+    /**
+     * inserts empty blocks at the start of the column, moving all values numBlocks * BLOCK_SIZE offsets further
+     *
+     * @param numBlocks
+     */
+    void prepend(int numBlocks) {
+        Block[] moved = new Block[blocks.length + numBlocks];
+        System.arraycopy(blocks, 0, moved, numBlocks, blocks.length);
+        blocks = moved;
+
+        int shift = numBlocks << BLOCK_SHIFT;
+        BitSet shiftedValid = new BitSet(valid.length() + shift);
+        for (int offset = valid.nextSetBit(0); offset >= 0; offset = valid.nextSetBit(offset + 1)) {
+            shiftedValid.set(offset + shift);
+        }
+        valid = shiftedValid;
+        decoded = null;
+        totals = null;
+        prefix = null;
+        otherPrefix = null;
+    }
+
+    /**
+     * moves the packed blocks into another arena, where the blocks that are packed later will be stored as well
+     *
+     * @param arena the new arena, or null to keep the packed blocks on the heap
+     */
+    void setArena(BlockArena arena) {
+        this.arena = arena;
+        for (Block block : blocks) {
+            if (block != null && block.bits != null) {
+                long[] words = new long[block.bits.capacity()];
+                block.bits.get(0, words);
+                block.bits = store(words);
+            }
+        }
+    }
+
+    /**
+     * @return an estimate of the number of bytes in use by the column on the heap
+     */
+    long estimatedBytes() {
+        long bytes = 16 + valid.size() / 8 + 16 + 4L * blocks.length;
+        for (Block block : blocks) {
+            if (block == null) continue;
+            bytes += 64;    // the block and its header
+            bytes += block.raw != null ? 16 + 2L * block.raw.length : 48 + (block.bits.isDirect() ? 0 : 8L * block.bits.capacity());
+        }
+        return bytes;
+    }
+
+    private int countBefore(Totals totals, int offset) {
+        int index = offset >> BLOCK_SHIFT;
+        int numBlocks = totals.countsBefore.length - 1;
+        if (index >= numBlocks) return totals.countsBefore[numBlocks];
+        int position = offset & (BLOCK_SIZE - 1);
+        Prefix within = position == 0 ? null : prefixOf(index);
+        return totals.countsBefore[index] + (within == null ? 0 : within.counts[position]);
+    }
+
+    private long sumBefore(Totals totals, int offset) {
+        int index = offset >> BLOCK_SHIFT;
+        int numBlocks = totals.sumsBefore.length - 1;
+        if (index >= numBlocks) return totals.sumsBefore[numBlocks];
+        int position = offset & (BLOCK_SIZE - 1);
+        Prefix within = position == 0 ? null : prefixOf(index);
+        return totals.sumsBefore[index] + (within == null ? 0 : within.sums[position]);
+    }
+
+    /**
+     * @return the totals of the blocks, rebuilt from their headers if a block has changed
+     */
+    private Totals totals() {
+        Totals current = totals;
+        if (current != null) return current;
+
+        current = new Totals(blocks.length);
+        for (int index = 0; index < blocks.length; index++) {
+            Block block = blocks[index];
+            if (block != null) refreshHeader(block, index);
+            boolean hasValues = block != null && block.count > 0;
+            current.countsBefore[index + 1] = current.countsBefore[index] + (hasValues ? block.count : 0);
+            current.sumsBefore[index + 1] = current.sumsBefore[index] + (hasValues ? block.sum : 0);
+        }
+        for (int level = 0; level < current.minBlocks.length; level++) {
+            int[] minBlocks = current.minBlocks[level] = new int[blocks.length - (1 << level) + 1];
+            int[] maxBlocks = current.maxBlocks[level] = new int[minBlocks.length];
+            for (int index = 0; index < minBlocks.length; index++) {
+                if (level == 0) {
+                    boolean hasValues = blocks[index] != null && blocks[index].count > 0;
+                    minBlocks[index] = maxBlocks[index] = hasValues ? index : -1;
+                } else {
+                    // of two equal extremes the one in the earlier half is taken
+                    int half = index + (1 << (level - 1));
+                    minBlocks[index] = lower(current.minBlocks[level - 1][index], current.minBlocks[level - 1][half]);
+                    maxBlocks[index] = higher(current.maxBlocks[level - 1][index], current.maxBlocks[level - 1][half]);
+                }
+            }
+        }
+        totals = current;
+        return current;
+    }
+
+    private int lower(int index, int otherIndex) {
+        if (index < 0) return otherIndex;
+        if (otherIndex < 0) return index;
+        return blocks[otherIndex].min < blocks[index].min ? otherIndex : index;
+    }
+
+    private int higher(int index, int otherIndex) {
+        if (index < 0) return otherIndex;
+        if (otherIndex < 0) return index;
+        return blocks[otherIndex].max > blocks[index].max ? otherIndex : index;
+    }
+
+    /**
+     * @param index
+     * @return the cumulative totals within the block, or null if the block holds no values
+     */
+    private Prefix prefixOf(int index) {
+        Prefix recent = prefix;
+        if (recent != null && recent.index == index) return recent;
+        Prefix other = otherPrefix;
+        if (other != null && other.index == index) return other;
+
+        short[] values = valuesOfBlock(index);
+        if (values == null) return null;
+        Prefix within = new Prefix(index);
+        int start = index << BLOCK_SHIFT;
+        for (int position = 0; position < BLOCK_SIZE; position++) {
+            boolean isValid = valid.get(start + position);
+            within.counts[position + 1] = within.counts[position] + (isValid ? 1 : 0);
+            within.sums[position + 1] = within.sums[position] + (isValid ? values[position] : 0);
+        }
+        otherPrefix = recent;
+        prefix = within;
+        return within;
+    }
+
+    /**
+     * collects the extremes of the valid values in a range: the blocks completely inside of the range
+     * are covered by two overlapping entries of a sparse table, the partial blocks at the ends are scanned
+     *
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @param isMax      whether the maximum is needed, otherwise the minimum
+     * @return the summary of the extremes of the range
+     */
+    private Summary extreme(int fromOffset, int toOffset, boolean isMax) {
+        Summary summary = new Summary();
+        toOffset = Math.min(toOffset, blocks.length << BLOCK_SHIFT);
+        int firstFull = (fromOffset + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+        int endFull = toOffset >> BLOCK_SHIFT;
+        if (firstFull >= endFull) {
+            scan(summary, fromOffset, toOffset);
+            return summary;
+        }
+
+        // the ranges are included in order, so that the earliest of equal extremes is kept
+        scan(summary, fromOffset, firstFull << BLOCK_SHIFT);
+        Totals current = totals();
+        int[][] table = isMax ? current.maxBlocks : current.minBlocks;
+        int level = 31 - Integer.numberOfLeadingZeros(endFull - firstFull);
+        includeBlock(summary, table[level][firstFull]);
+        includeBlock(summary, table[level][endFull - (1 << level)]);
+        scan(summary, endFull << BLOCK_SHIFT, toOffset);
+        return summary;
+    }
+
+    private void includeBlock(Summary summary, int index) {
+        if (index < 0) return;
+        Block block = blocks[index];
+        int start = index << BLOCK_SHIFT;
+        include(summary, block.count, block.sum, block.min, start + block.argMin, block.max, start + block.argMax);
+    }
+
+    /**
+     * includes the valid values of a range within at most two blocks in a summary, value by value
+     */
+    private void scan(Summary summary, int fromOffset, int toOffset) {
+        for (int index = fromOffset >> BLOCK_SHIFT; fromOffset < toOffset && index <= (toOffset - 1) >> BLOCK_SHIFT; index++) {
+            Block block = blocks[index];
+            if (block == null) continue;
+
+            int start = index << BLOCK_SHIFT;
+            short[] values = block.raw != null ? block.raw : decode(index);
+            int to = Math.min(toOffset, start + BLOCK_SIZE);
+            for (int offset = valid.nextSetBit(Math.max(fromOffset, start)); offset >= 0 && offset < to;
+                 offset = valid.nextSetBit(offset + 1)) {
+                int value = values[offset - start];
+                include(summary, 1, value, value, offset, value, offset);
+            }
+        }
+    }
+
+    private static void include(Summary summary, int count, long sum, int min, int argMin, int max, int argMax) {
+        // the ranges are visited in order, so an equal extreme of a later range is never taken
+        if (summary.count == 0 || min < summary.min) {
+            summary.min = min;
+            summary.argMin = argMin;
+        }
+        if (summary.count == 0 || max > summary.max) {
+            summary.max = max;
+            summary.argMax = argMax;
+        }
+        summary.count += count;
+        summary.sum += sum;
+    }
+
+    /**
+     * @param index
+     * @return the block, with its values in a plain array
+     */
+    private Block open(int index) {
+        if (index >= blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(index + 1, blocks.length + blocks.length / 2));
+        }
+        Block block = blocks[index];
+        if (block == null) {
+            block = blocks[index] = new Block();
+            block.raw = new short[BLOCK_SIZE];
+            Arrays.fill(block.raw, TimeSeries.MISSING);
+        } else if (block.raw == null) {
+            block.raw = decode(index).clone();
+            block.bits = null;
+            decoded = null;
+        }
+        return block;
+    }
+
+    private void refreshHeader(Block block, int index) {
+        if (!block.isStale) return;
+        Summary summary = new Summary();
+        int start = index << BLOCK_SHIFT;
+        for (int offset = valid.nextSetBit(start); offset >= 0 && offset < start + BLOCK_SIZE; offset = valid.nextSetBit(offset + 1)) {
+            int value = block.raw[offset - start];
+            include(summary, 1, value, value, offset - start, value, offset - start);
+        }
+        block.count = summary.count;
+        block.sum = summary.sum;
+        block.min = summary.min;
+        block.max = summary.max;
+        block.argMin = summary.argMin;
+        block.argMax = summary.argMax;
+        block.isStale = false;
+    }
+
+    /**
+     * encodes an open block at the width of its smallest encoding
+     */
+    private void pack(Block block, int index) {
+        refreshHeader(block, index);
+
+        // invalid values repeat the previous valid value, the first valid value is repeated before it
+        int start = index << BLOCK_SHIFT;
+        int[] values = new int[BLOCK_SIZE];
+        int previous = block.count == 0 ? 0 : block.raw[valid.nextSetBit(start) - start];
+        for (int position = 0; position < BLOCK_SIZE; position++) {
+            if (valid.get(start + position)) previous = block.raw[position];
+            values[position] = previous;
+        }
+
+        int referenceWidth = bitsFor(block.count == 0 ? 0 : block.max - block.min);
+        long maxZigZag = 0;
+        for (int position = 1; position < BLOCK_SIZE; position++) {
+            maxZigZag = Math.max(maxZigZag, zigZag(values[position] - values[position - 1]));
+        }
+        int deltaWidth = bitsFor(maxZigZag);
+
+        block.isDelta = deltaWidth < referenceWidth;
+        block.width = block.isDelta ? deltaWidth : referenceWidth;
+        block.reference = block.isDelta ? values[0] : (block.count == 0 ? 0 : block.min);
+        long[] words = new long[(BLOCK_SIZE * block.width + 63) / 64];
+        for (int position = 0; position < BLOCK_SIZE; position++) {
+            long encoded = block.isDelta
+                    ? (position == 0 ? 0 : zigZag(values[position] - values[position - 1]))
+                    : values[position] - block.reference;
+            pack(words, block.width, position, encoded);
+        }
+        block.bits = store(words);
+        block.raw = null;
+    }
+
+    /**
+     * @param index the index of a packed block
+     * @return the values of the block, with MISSING for invalid ones
+     */
+    private short[] decode(int index) {
+        Decoded last = decoded;
+        if (last != null && last.index == index) return last.values;
+
+        Block block = blocks[index];
+        short[] values = new short[BLOCK_SIZE];
+        int start = index << BLOCK_SHIFT;
+        int value = block.reference;
+        for (int position = 0; position < BLOCK_SIZE; position++) {
+            long encoded = unpack(block.bits, block.width, position);
+            if (block.isDelta) {
+                if (position > 0) value += (int) (encoded >>> 1) ^ -(int) (encoded & 1);
+            } else {
+                value = block.reference + (int) encoded;
+            }
+            values[position] = valid.get(start + position) ? (short) value : TimeSeries.MISSING;
+        }
+        decoded = new Decoded(index, values);
+        return values;
+    }
+
+    private LongBuffer store(long[] words) {
+        return arena == null ? LongBuffer.wrap(words) : arena.allocate(words.length).put(0, words);
+    }
+
+    private static long zigZag(int delta) {
+        return ((long) delta << 1) ^ (delta >> 31);
+    }
+
+    private static int bitsFor(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    private static void pack(long[] bits, int width, int position, long value) {
+        if (width == 0) return;
+        long bit = (long) position * width;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        bits[word] |= value << shift;
+        if (shift + width > 64) {
+            bits[word + 1] |= value >>> (64 - shift);
+        }
+    }
+
+    private static long unpack(LongBuffer bits, int width, int position) {
+        if (width == 0) return 0;
+        long bit = (long) position * width;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long value = bits.get(word) >>> shift;
+        if (shift + width > 64) {
+            value |= bits.get(word + 1) << (64 - shift);
+        }
+        return value & ((1L << width) - 1);
+    }
+}
@@ -0,0 +1,223 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * @author Costa van Elsas
+ * A mergeable summary of the distribution of the values of a quantity, from which percentiles can be estimated
+ * The sketch follows KLL (Karnin, Lang and Liberty): values enter at level 0, and a level that exceeds its capacity
+ * is compacted by sorting it and promoting every other value to the level above, where each value counts twice as much.
+ * The capacities shrink by 2/3 per level below the top, so at most about 3k values are retained however many are added,
+ * and sketches of different stations and years merge level by level into a sketch with the same guarantees.
+ * With the default k the rank of an estimated percentile is off by about 2.5% of the count at most, with high probability;
+ * as long as no more than k values have been added the sketch is exact.
+ */
+public class QuantileSketch {
+    static final int DEFAULT_K = 128;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int MIN_CAPACITY = 2;
+
+    private final int k;
+    private short[][] levels = {new short[8]};     // the retained raw values by level, in 0.1 units
+    private int[] sizes = {0};                      // the number of values in use at every level
+    private int numRetained = 0;
+    private int totalCapacity;                      // the sum of the capacities of the levels
+    private long count = 0;
+    private short min;
+    private short max;
+    private long random = 0x9E3779B97F4A7C15L;      // the state of the coin that decides which values are promoted
+
+    QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k the capacity of the top level, which controls the accuracy and the size of the sketch
+     */
+    QuantileSketch(int k) {
+        if (k < 8) {
+            throw new IllegalArgumentException("The capacity of a sketch shall be at least 8");
+        }
+        this.k = k;
+        this.totalCapacity = k;
+    }
+
+    /**
+     * @return the number of values summarized by the sketch
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of values that are kept in the sketch
+     */
+    public int getNumRetained() {
+        return numRetained;
+    }
+
+    /**
+     * adds a raw value to the sketch
+     *
+     * @param tenths a valid value in 0.1 units
+     */
+    void add(int tenths) {
+        if (count == 0 || tenths < min) min = (short) tenths;
+        if (count == 0 || tenths > max) max = (short) tenths;
+        count++;
+        append(0, (short) tenths);
+        if (numRetained > totalCapacity) {
+            compress();
+        }
+    }
+
+    /**
+     * adds all values summarized by another sketch to this sketch
+     *
+     * @param other the sketch to be merged, which is left unchanged
+     * @return this sketch
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.count == 0) return this;
+        if (count == 0 || other.min < min) min = other.min;
+        if (count == 0 || other.max > max) max = other.max;
+        count += other.count;
+        for (int level = 0; level < other.levels.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        while (numRetained > totalCapacity) {
+            compress();
+        }
+        return this;
+    }
+
+    /**
+     * estimates a quantile of the values that have been added, e.g. 0.99 for the 99th percentile
+     * the minimum and maximum are exact
+     *
+     * @param fraction the fraction of the values at or below the quantile, between 0.0 and 1.0
+     * @return the smallest retained value with at least that fraction of the values at or below it,
+     * Double.NaN if the sketch is empty
+     */
+    public double quantile(double fraction) {
+        if (!(fraction >= 0.0 && fraction <= 1.0)) {
+            throw new IllegalArgumentException("The fraction shall be between 0.0 and 1.0");
+        }
+        if (count == 0) return Double.NaN;
+        if (fraction == 0.0) return TimeSeries.fromTenths(min);
+        if (fraction == 1.0) return TimeSeries.fromTenths(max);
+
+        // sort the retained values together with their level, which gives their weight
+        long[] weighted = new long[numRetained];
+        int n = 0;
+        for (int level = 0; level < levels.length; level++) {
+            for (int i = 0; i < sizes[level]; i++) {
+                weighted[n++] = (long) (levels[level][i] - Short.MIN_VALUE) << 8 | level;
+            }
+        }
+        Arrays.sort(weighted);
+
+        long rank = (long) Math.ceil(fraction * count);
+        long cumulative = 0;
+        for (long entry : weighted) {
+            cumulative += 1L << (entry & 0xFF);
+            if (cumulative >= rank) {
+                return TimeSeries.fromTenths((int) (entry >> 8) + Short.MIN_VALUE);
+            }
+        }
+        return TimeSeries.fromTenths(max);
+    }
+
+    /**
+     * releases the unused room of the levels, for sketches that will not grow much further
+     */
+    void trim() {
+        for (int level = 0; level < levels.length; level++) {
+            if (levels[level].length > sizes[level]) {
+                levels[level] = Arrays.copyOf(levels[level], sizes[level]);
+            }
+        }
+    }
+
+    /**
+     * @return an estimate of the number of bytes in use by the sketch
+     */
+    long estimatedBytes() {
+        long bytes = 64;
+        for (short[] level : levels) {
+            bytes += 16 + 2L * level.length + 4;
+        }
+        return bytes;
+    }
+
+    private void append(int level, short tenths) {
+        if (level == levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            levels[level] = new short[8];
+            sizes = Arrays.copyOf(sizes, level + 1);
+            // the capacities of all levels follow the number of levels
+            totalCapacity = 0;
+            for (int l = 0; l < levels.length; l++) {
+                totalCapacity += capacity(l);
+            }
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(8, 2 * sizes[level]));
+        }
+        levels[level][sizes[level]++] = tenths;
+        numRetained++;
+    }
+
+    /**
+     * @param level
+     * @return the number of values that the level may hold, given the current number of levels
+     */
+    private int capacity(int level) {
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, levels.length - 1 - level)));
+    }
+
+    /**
+     * compacts the lowest level that has reached its capacity
+     */
+    private void compress() {
+        for (int level = 0; level < levels.length; level++) {
+            if (sizes[level] >= capacity(level)) {
+                compact(level);
+                return;
+            }
+        }
+    }
+
+    /**
+     * promotes either the values at the even or at the odd positions of a sorted level to the level above,
+     * each of them then stands for itself and its discarded neighbour
+     * an odd value out stays behind, so the total weight of the sketch remains equal to the count
+     *
+     * @param level
+     */
+    private void compact(int level) {
+        short[] values = levels[level];
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+
+        int numPaired = size & ~1;
+        for (int i = nextCoin(); i < numPaired; i += 2) {
+            // the level above may be new, which replaces the arrays
+            append(level + 1, values[i]);
+        }
+        numRetained -= numPaired;
+        if (numPaired < size) {
+            values[0] = values[size - 1];
+        }
+        sizes[level] = size - numPaired;
+    }
+
+    private int nextCoin() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return (int) (random >>> 63);
+    }
+}
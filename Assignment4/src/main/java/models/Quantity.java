@@ -0,0 +1,43 @@
+package models;
+
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * @author Costa van Elsas
+ * The daily quantities of a KNMI measurement, named after their columns in the source files
+ * Each quantity addresses its own column in the storage of a Station.
+ * A quantity is a getter on Measurement as well, so it can be passed wherever a mapper is expected;
+ * methods that recognise a quantity read its column directly instead of recreating measurements.
+ */
+public enum Quantity implements ToDoubleFunction<Measurement> {
+    FG(Measurement::getAverageWindSpeed, Measurement::setAverageWindSpeed),          // in m/s
+    FXX(Measurement::getMaxWindGust, Measurement::setMaxWindGust),                   // in m/s
+    TG(Measurement::getAverageTemperature, Measurement::setAverageTemperature),      // in degC
+    TN(Measurement::getMinTemperature, Measurement::setMinTemperature),              // in degC
+    TX(Measurement::getMaxTemperature, Measurement::setMaxTemperature),              // in degC
+    SQ(Measurement::getSolarHours, Measurement::setSolarHours),                      // in hours
+    RH(Measurement::getPrecipitation, Measurement::setPrecipitation),                // in mm
+    RHX(Measurement::getMaxHourlyPrecipitation, Measurement::setMaxHourlyPrecipitation); // in mm
+
+    private final ToDoubleFunction<Measurement> getter;
+    private final ObjDoubleConsumer<Measurement> setter;
+
+    Quantity(ToDoubleFunction<Measurement> getter, ObjDoubleConsumer<Measurement> setter) {
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    /**
+     * @param measurement
+     * @return the value of this quantity in the measurement, Double.NaN if it is invalid
+     */
+    @Override
+    public double applyAsDouble(Measurement measurement) {
+        return getter.applyAsDouble(measurement);
+    }
+
+    void setValue(Measurement measurement, double value) {
+        setter.accept(measurement, value);
+    }
+}
@@ -0,0 +1,154 @@
+package models;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author Costa van Elsas
+ * Rolling-window statistics of a quantity, such as a 30-day moving average or a 365-day rolling precipitation
+ * The valid values of one or more stations are first merged into totals per day, after which the window slides
+ * over the days once: the count and the sum of the window are updated as a day enters and a day leaves it,
+ * and the minimum and maximum are kept at the front of monotonic deques of the days in the window.
+ * So a whole series takes time in proportion to the number of days, regardless of the length of the window.
+ * Days without a valid value are skipped, a window without any valid value gives Double.NaN.
+ */
+public class RollingWindow {
+    /**
+     * the statistics that can be taken over the valid values in a window
+     */
+    public enum Statistic {
+        AVERAGE,
+        SUM,
+        MIN,
+        MAX
+    }
+
+    private final int windowDays;
+    private final int leadDay;          // the epoch day at index 0, where the first window starts
+    // the totals of the valid values by day, in 0.1 units
+    private final int[] counts;
+    private final long[] sums;
+    private final short[] minima;
+    private final short[] maxima;
+
+    /**
+     * prepares the windows that end at every day between startDate and endDate (inclusive)
+     * the windows of the first days include the days before startDate
+     *
+     * @param startDate  the day of the first window (inclusive)
+     * @param endDate    the day of the last window (inclusive)
+     * @param windowDays the number of days in a window, which ends at its day
+     */
+    RollingWindow(LocalDate startDate, LocalDate endDate, int windowDays) {
+        if (windowDays < 1) {
+            throw new IllegalArgumentException("A window has at least one day");
+        }
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("startDate is after endDate");
+        }
+        this.windowDays = windowDays;
+        this.leadDay = (int) startDate.toEpochDay() - windowDays + 1;
+        int numDays = Math.toIntExact(endDate.toEpochDay() - leadDay + 1);
+
+        counts = new int[numDays];
+        sums = new long[numDays];
+        minima = new short[numDays];
+        maxima = new short[numDays];
+    }
+
+    /**
+     * @return the epoch day at which the first window starts
+     */
+    int getLeadDay() {
+        return leadDay;
+    }
+
+    /**
+     * @return the epoch day of the last window
+     */
+    int getLastDay() {
+        return leadDay + counts.length - 1;
+    }
+
+    /**
+     * merges a valid value into the totals of its day
+     *
+     * @param epochDay the day of the value, which is ignored outside of the windows
+     * @param tenths   the raw value in 0.1 units
+     */
+    void add(int epochDay, int tenths) {
+        int index = epochDay - leadDay;
+        if (index < 0 || index >= counts.length) return;
+
+        if (counts[index] == 0 || tenths < minima[index]) minima[index] = (short) tenths;
+        if (counts[index] == 0 || tenths > maxima[index]) maxima[index] = (short) tenths;
+        counts[index]++;
+        sums[index] += tenths;
+    }
+
+    /**
+     * slides the window over the days once
+     *
+     * @param statistic the statistic to be taken over every window
+     * @return a map(D,V) that provides for each day D the statistic V of the window ending at D, in order of the days
+     * Double.NaN if no valid values are available in the window
+     */
+    Map<LocalDate, Double> series(Statistic statistic) {
+        Map<LocalDate, Double> series = new LinkedHashMap<>();
+        // the indices of the days in the window with an increasing minimum or a decreasing maximum, as ring buffers
+        int[] deque = new int[windowDays];
+        int head = 0;
+        int size = 0;
+        int count = 0;
+        long sum = 0;
+
+        for (int index = 0; index < counts.length; index++) {
+            // the day that leaves the window can only be at the front of the deque
+            int leaving = index - windowDays;
+            if (leaving >= 0) {
+                count -= counts[leaving];
+                sum -= sums[leaving];
+                if (size > 0 && deque[head] == leaving) {
+                    head = (head + 1) % windowDays;
+                    size--;
+                }
+            }
+
+            if (counts[index] > 0) {
+                count += counts[index];
+                sum += sums[index];
+                if (statistic == Statistic.MIN || statistic == Statistic.MAX) {
+                    // remove the days that can no longer be the extreme of any window
+                    while (size > 0 && !precedes(statistic, deque[(head + size - 1) % windowDays], index)) {
+                        size--;
+                    }
+                    deque[(head + size) % windowDays] = index;
+                    size++;
+                }
+            }
+
+            if (index >= windowDays - 1) {
+                double value;
+                if (count == 0) {
+                    value = Double.NaN;
+                } else if (statistic == Statistic.AVERAGE) {
+                    value = TimeSeries.averageOfTenths(sum, count);
+                } else if (statistic == Statistic.SUM) {
+                    value = sum / TimeSeries.TENTHS;
+                } else {
+                    value = TimeSeries.fromTenths(statistic == Statistic.MIN ? minima[deque[head]] : maxima[deque[head]]);
+                }
+                series.put(EpochDays.toLocalDate(leadDay + index), value);
+            }
+        }
+        return series;
+    }
+
+    /**
+     * @return true if the earlier day stays ahead of the later day in the deque of the statistic
+     */
+    private boolean precedes(Statistic statistic, int earlier, int later) {
+        return statistic == Statistic.MIN ? minima[earlier] < minima[later] : maxima[earlier] > maxima[later];
+    }
+}
@@ -0,0 +1,76 @@
+package models;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Costa van Elsas
+ * Counts how the blocks of days have been visited by filtered scans
+ * The zone map of a filtered scan is the monthly rollup, so a block is a calendar month of the scanned range.
+ * A block is pruned when its summary (minimum and maximum) proves that none of its values can match,
+ * it is summarized when the summary proves that all of its valid values match,
+ * and it is decoded otherwise, in which case every value of the block is compared.
+ */
+public class ScanStatistics {
+    private final LongAdder blocksPruned = new LongAdder();
+    private final LongAdder blocksSummarized = new LongAdder();
+    private final LongAdder blocksDecoded = new LongAdder();
+
+    /**
+     * @return the number of blocks skipped because none of their values can match
+     */
+    public long getBlocksPruned() {
+        return blocksPruned.sum();
+    }
+
+    /**
+     * @return the number of blocks taken as a whole because all of their values match
+     */
+    public long getBlocksSummarized() {
+        return blocksSummarized.sum();
+    }
+
+    /**
+     * @return the number of blocks whose values have been compared one by one
+     */
+    public long getBlocksDecoded() {
+        return blocksDecoded.sum();
+    }
+
+    /**
+     * @return the number of blocks that have been visited
+     */
+    public long getBlocksVisited() {
+        return getBlocksPruned() + getBlocksSummarized() + getBlocksDecoded();
+    }
+
+    void pruned() {
+        blocksPruned.increment();
+    }
+
+    void summarized() {
+        blocksSummarized.increment();
+    }
+
+    void decoded() {
+        blocksDecoded.increment();
+    }
+
+    /**
+     * adds the counts of other statistics to these
+     *
+     * @param other
+     * @return these statistics
+     */
+    ScanStatistics add(ScanStatistics other) {
+        blocksPruned.add(other.getBlocksPruned());
+        blocksSummarized.add(other.getBlocksSummarized());
+        blocksDecoded.add(other.getBlocksDecoded());
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d blocks visited: %d pruned, %d summarized, %d decoded",
+                getBlocksVisited(), getBlocksPruned(), getBlocksSummarized(), getBlocksDecoded());
+    }
+}
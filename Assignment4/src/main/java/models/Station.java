@@ -2,27 +2,35 @@ package models;
 
 import java.time.LocalDate;
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToDoubleFunction;
 
 /**
  * @author Costa van Elsas
  * Station class, adding measurements and other methods to further accomodate the staion class
  */
 public class Station {
+    private static final Quantity[] QUANTITIES = Quantity.values();
+
     private final int stn;
     private final String name;
-    private NavigableMap<LocalDate, Measurement> measurements;
+    private final TimeSeries measurements;    // columnar storage of all measurements, by day
 
     public Station(int id, String name) {
         this.stn = id;
         this.name = name;
-        measurements = new TreeMap<>();
+        measurements = new TimeSeries();
     }
 
+    /**
+     * provides a view of all measurements of this station in order of their date
+     * the Measurement instances are recreated from the columnar storage on every iteration
+     *
+     * @return the measurements
+     */
     public Collection<Measurement> getMeasurements() {
-        return measurements.values();
+        return new MeasurementsBetween(0, measurements.length());
     }
 
     public int getStn() {
@@ -59,21 +67,60 @@ public class Station {
      * @return the nett number of measurements which have been added.
      */
     public int addMeasurements(Collection<Measurement> newMeasurements) {
-        int oldSize = this.getMeasurements().size();
+        int numAdded = 0;
 
-        //create a new dates hashset
-        Set<LocalDate> dates = new HashSet<>();
+        for (Measurement measurement : newMeasurements) {
+            //check if its the right station, the series refuses a date that it already holds
+            if (measurement.getStation().equals(this) && measurements.add(measurement)) {
+                numAdded++;
+            }
+        }
+        // pack the blocks that have been completed, once for the whole batch
+        measurements.compact();
 
-        Stream<Measurement> filterStation = newMeasurements.stream() // stream the new measurements
-                .filter(measurement -> measurement.getStation().equals(this)) //check if its the right station
-                .filter(measurement -> dates.add(measurement.getDate())); //add the date to the new dates hashset
+        return numAdded;
+    }
 
-        Map<LocalDate, Measurement> newMap = filterStation
-                .collect(Collectors.toMap(Measurement::getDate, measurement -> measurement)); //create a new map and add measurement to the date
+    /**
+     * adds days of raw values to this station, as they have been stored in columns
+     * days with a date that is already present shall be ignored and not added
+     * the completed blocks are not packed yet, so batches can arrive in any order without unpacking blocks again;
+     * call compact() after the last batch
+     *
+     * @param epochDays the days to be added
+     * @param tenths    the raw values of the days by quantity ordinal, with TimeSeries.MISSING for invalid values
+     * @return the nett number of days which have been added.
+     */
+    int addDays(int[] epochDays, short[][] tenths) {
+        int numAdded = 0;
+        short[] day = new short[tenths.length];
 
-        this.measurements.putAll(newMap); // add the new map values to the measurements
+        for (int d = 0; d < epochDays.length; d++) {
+            for (int q = 0; q < tenths.length; q++) {
+                day[q] = tenths[q][d];
+            }
+            if (measurements.add(epochDays[d], day)) {
+                numAdded++;
+            }
+        }
 
-        return this.getMeasurements().size() - oldSize;
+        return numAdded;
+    }
+
+    /**
+     * packs the blocks of the measurements that have been completed
+     */
+    void compact() {
+        measurements.compact();
+    }
+
+    /**
+     * selects the memory in which the packed blocks of the measurements are stored
+     *
+     * @param arena the arena, or null to keep them on the heap
+     */
+    void setArena(BlockArena arena) {
+        measurements.setArena(arena);
     }
 
     /**
@@ -83,25 +130,11 @@ public class Station {
      * returns Double.NaN when no valid measurements are available
      */
     public double allTimeMaxTemperature() {
-
-        double maxTemp = measurements.values().stream() // stream over the measurements from this station
-                .map(measurement -> {
-                    try {
-                        return measurement.getMaxTemperature(); // try to return the max temperature otherwise return double.nan
-                    } catch (NumberFormatException e) {
-                        return Double.NaN;
-                    }
-                })
-                .collect(Collectors.summarizingDouble(measurement -> measurement)).getMax();
-                // get all the doubles from the map and return the highest double (temperature)
-
-        // catch empty temperature values
-        if (maxTemp == Double.NEGATIVE_INFINITY) {
-            maxTemp = Double.NaN;
-        }
+        // look up the day of the maximum in the sparse table of the block maxima of the whole series
+        int offset = measurements.argMax(Quantity.TX, 0, measurements.length());
 
         //return the max temperature measured at this station
-        return maxTemp;
+        return offset < 0 ? Double.NaN : measurements.getValue(Quantity.TX, offset);
     }
 
     /**
@@ -109,8 +142,18 @@ public class Station {
      * returns Optional.empty() if no measurements are available
      */
     public Optional<LocalDate> firstDayOfMeasurement() {
-        return measurements.navigableKeySet().stream() //stream over the measurements in a key set
-                .min(LocalDate::compareTo); // compare the measurements by date and get the smallest one
+        int offset = measurements.nextPresent(0); // the first day that holds a measurement
+        return offset < 0 ? Optional.empty() : Optional.of(EpochDays.toLocalDate(measurements.dayAt(offset)));
+    }
+
+    /**
+     * @return the date of the last day of a measurement for this station
+     * returns Optional.empty() if no measurements are available
+     */
+    public Optional<LocalDate> lastDayOfMeasurement() {
+        // the series never extends beyond the last day that holds a measurement
+        return measurements.length() == 0 ? Optional.empty()
+                : Optional.of(EpochDays.toLocalDate(measurements.dayAt(measurements.length() - 1)));
     }
 
     /**
@@ -121,10 +164,22 @@ public class Station {
      * @param mapper the getter method of the data field to be checked.
      * @return the number of valid values found
      */
-    public int numValidValues(Function<Measurement, Double> mapper) {
-         return Math.toIntExact(measurements.values().stream() //stream over measurements
-                 .filter(measurement -> !Double.isNaN(mapper.apply(measurement)))
-                 .count()); //check if its empty and count the number of valid values
+    public int numValidValues(ToDoubleFunction<Measurement> mapper) {
+        if (mapper instanceof Quantity) return numValidValues((Quantity) mapper);
+
+        int[] count = {0};
+        forEachValue(0, measurements.length(), mapper, (measurement, value) -> count[0]++); //count the valid values
+        return count[0];
+    }
+
+    /**
+     * calculates the number of valid values of a quantity from the cumulative counts of its column in constant time
+     *
+     * @param quantity the quantity to be checked
+     * @return the number of valid values found
+     */
+    public int numValidValues(Quantity quantity) {
+        return measurements.countValid(quantity, 0, measurements.length());
     }
 
     /**
@@ -137,9 +192,55 @@ public class Station {
      * 0.0 if no measurements have been made in this period.
      */
     public double totalPrecipitationBetween(LocalDate startDate, LocalDate endDate) {
-        return measurements.subMap(startDate, true, endDate, true).values().stream() //create a submap and stream over it
-                .mapToDouble(Measurement::getPrecipitation) //get the precipitation
-                .filter(checkEmpty -> !Double.isNaN(checkEmpty)).sum(); //check if the sum is empty
+        return totalBetween(startDate, endDate, Quantity.RH);
+    }
+
+    /**
+     * calculates the total of all valid values of a quantity
+     * across the time period between startDate and endDate (inclusive)
+     * in constant time, from the cumulative sums of the blocks of the series and within the blocks at the ends of the period
+     *
+     * @param startDate the start date of the period of accumulation (inclusive)
+     * @param endDate   the end date of the period of accumulation (inclusive)
+     * @param quantity  the quantity to be accumulated
+     * @return the total value across the period
+     * 0.0 if no valid values are available from this period.
+     */
+    public double totalBetween(LocalDate startDate, LocalDate endDate, Quantity quantity) {
+        // the sum of the raw tenths is exact, only the total is converted
+        return totalTenthsBetween(startDate, endDate, quantity) / TimeSeries.TENTHS;
+    }
+
+    /**
+     * calculates the number of valid values of a quantity
+     * across the time period between startDate and endDate (inclusive)
+     * in constant time, from the cumulative totals of the blocks and within the blocks at the ends of the period
+     *
+     * @param startDate the start date of the period (inclusive)
+     * @param endDate   the end date of the period (inclusive)
+     * @param quantity  the quantity to be counted
+     * @return the number of valid values found
+     */
+    public int numValidValuesBetween(LocalDate startDate, LocalDate endDate, Quantity quantity) {
+        MeasurementsBetween period = measurementsBetween(startDate, endDate);
+        return measurements.countValid(quantity, period.fromOffset, period.toOffset);
+    }
+
+    /**
+     * calculates the average of all valid values of a quantity
+     * across the time period between startDate and endDate (inclusive)
+     * in constant time, from the cumulative totals of the blocks and within the blocks at the ends of the period
+     *
+     * @param startDate the start date of the period of averaging (inclusive)
+     * @param endDate   the end date of the period of averaging (inclusive)
+     * @param quantity  the quantity to be averaged
+     * @return the average of all valid values of the quantity across the period
+     * Double.NaN if no valid measurements are available from this period.
+     */
+    public double averageBetween(LocalDate startDate, LocalDate endDate, Quantity quantity) {
+        MeasurementsBetween period = measurementsBetween(startDate, endDate);
+        return TimeSeries.averageOfTenths(measurements.sumTenths(quantity, period.fromOffset, period.toOffset),
+                measurements.countValid(quantity, period.fromOffset, period.toOffset));
     }
 
     /**
@@ -152,11 +253,312 @@ public class Station {
      * @return the average of all valid values of the selected quantity across the period
      * Double.NaN if no valid measurements are available from this period.
      */
-    public double averageBetween(LocalDate startDate, LocalDate endDate, Function<Measurement, Double> mapper) {
-        return measurements.subMap(startDate, true, endDate, true).values().stream() //create a submap and stream over it
-                .map(mapper)
-                .filter(checkEmpty -> !Double.isNaN(checkEmpty)) //filter empty values
-                .mapToDouble(average -> average).average().orElse(Double.NaN); // get the average otherwise double.nan
+    public double averageBetween(LocalDate startDate, LocalDate endDate, ToDoubleFunction<Measurement> mapper) {
+        if (mapper instanceof Quantity) return averageBetween(startDate, endDate, (Quantity) mapper);
+
+        MeasurementsBetween period = measurementsBetween(startDate, endDate);
+        DoubleSummaryStatistics statistics = new DoubleSummaryStatistics();
+        forEachValue(period.fromOffset, period.toOffset, mapper, (measurement, value) -> statistics.accept(value));
+        return statistics.getCount() == 0 ? Double.NaN : statistics.getAverage(); // get the average otherwise double.nan
+    }
+
+    /**
+     * finds the measurement with the highest valid value of a quantity
+     * across the time period between startDate and endDate (inclusive)
+     * from a sparse table of the extremes of the blocks, only the blocks at the ends of the period are scanned
+     *
+     * @param startDate the start date of the period (inclusive)
+     * @param endDate   the end date of the period (inclusive)
+     * @param quantity  the quantity to be maximised
+     * @return the measurement of the earliest day with the highest value of the quantity
+     * Optional.empty() if no valid values are available from this period.
+     */
+    public Optional<Measurement> maxBetween(LocalDate startDate, LocalDate endDate, Quantity quantity) {
+        MeasurementsBetween period = measurementsBetween(startDate, endDate);
+        int offset = measurements.argMax(quantity, period.fromOffset, period.toOffset);
+        return offset < 0 ? Optional.empty() : Optional.of(toMeasurement(offset));
+    }
+
+    /**
+     * finds the measurement with the lowest valid value of a quantity
+     * across the time period between startDate and endDate (inclusive)
+     * from a sparse table of the extremes of the blocks, only the blocks at the ends of the period are scanned
+     *
+     * @param startDate the start date of the period (inclusive)
+     * @param endDate   the end date of the period (inclusive)
+     * @param quantity  the quantity to be minimised
+     * @return the measurement of the earliest day with the lowest value of the quantity
+     * Optional.empty() if no valid values are available from this period.
+     */
+    public Optional<Measurement> minBetween(LocalDate startDate, LocalDate endDate, Quantity quantity) {
+        MeasurementsBetween period = measurementsBetween(startDate, endDate);
+        int offset = measurements.argMin(quantity, period.fromOffset, period.toOffset);
+        return offset < 0 ? Optional.empty() : Optional.of(toMeasurement(offset));
+    }
+
+    /**
+     * counts the days with a valid value of a quantity within bounds
+     * across the time period between startDate and endDate (inclusive)
+     * months whose minimum and maximum in the monthly rollup prove that none or all of their values are within
+     * the bounds are not decoded, see getScanStatistics()
+     *
+     * @param startDate the start date of the period (inclusive)
+     * @param endDate   the end date of the period (inclusive)
+     * @param quantity  the quantity to be compared
+     * @param lower     the lowest matching value (inclusive), or Double.NEGATIVE_INFINITY
+     * @param upper     the highest matching value (inclusive), or Double.POSITIVE_INFINITY
+     * @return the number of days with a value within the bounds
+     */
+    public int numDaysWithin(LocalDate startDate, LocalDate endDate, Quantity quantity, double lower, double upper) {
+        MeasurementsBetween period = measurementsBetween(startDate, endDate);
+        return measurements.scanWithin(quantity, period.fromOffset, period.toOffset,
+                TimeSeries.lowerBoundOfTenths(lower), TimeSeries.upperBoundOfTenths(upper), null);
+    }
+
+    /**
+     * finds the measurements with a valid value of a quantity within bounds
+     * across the time period between startDate and endDate (inclusive)
+     * months whose minimum and maximum in the monthly rollup prove that none of their values are within the bounds
+     * are skipped
+     *
+     * @param startDate the start date of the period (inclusive)
+     * @param endDate   the end date of the period (inclusive)
+     * @param quantity  the quantity to be compared
+     * @param lower     the lowest matching value (inclusive), or Double.NEGATIVE_INFINITY
+     * @param upper     the highest matching value (inclusive), or Double.POSITIVE_INFINITY
+     * @return the measurements with a value within the bounds in order of their date
+     */
+    public List<Measurement> measurementsWithin(LocalDate startDate, LocalDate endDate, Quantity quantity,
+                                                double lower, double upper) {
+        MeasurementsBetween period = measurementsBetween(startDate, endDate);
+        List<Measurement> found = new ArrayList<>();
+        measurements.scanWithin(quantity, period.fromOffset, period.toOffset,
+                TimeSeries.lowerBoundOfTenths(lower), TimeSeries.upperBoundOfTenths(upper),
+                offset -> found.add(toMeasurement(offset)));
+        return found;
+    }
+
+    /**
+     * calculates a rolling-window statistic of a quantity for every day between startDate and endDate (inclusive),
+     * e.g. the 30-day moving average temperature, in a single pass over the days
+     *
+     * @param startDate  the day of the first window (inclusive)
+     * @param endDate    the day of the last window (inclusive)
+     * @param quantity   the quantity to be aggregated
+     * @param windowDays the number of days in every window, which ends at its day and may start before startDate
+     * @param statistic  the statistic to be taken over the valid values of every window
+     * @return a map(D,V) that provides for each day D the statistic V of the window ending at D, in order of the days
+     * Double.NaN if no valid values are available in the window
+     */
+    public Map<LocalDate, Double> rollingSeries(LocalDate startDate, LocalDate endDate, Quantity quantity,
+                                                int windowDays, RollingWindow.Statistic statistic) {
+        RollingWindow window = new RollingWindow(startDate, endDate, windowDays);
+        addTo(window, quantity);
+        return window.series(statistic);
+    }
+
+    /**
+     * merges the quantile sketches of a quantity that have been maintained for every year since the import
+     * into a sketch of the years between fromYear and toYear (inclusive), without visiting any day
+     * sketches of other stations and periods can be merged into the result to query any union of them
+     *
+     * @param quantity the quantity of which the distribution is requested
+     * @param fromYear the first year (inclusive)
+     * @param toYear   the last year (inclusive)
+     * @return a new sketch of all valid values of the quantity in the years
+     */
+    public QuantileSketch quantileSketch(Quantity quantity, int fromYear, int toYear) {
+        QuantileSketch result = new QuantileSketch();
+        forEachSketch(quantity, fromYear, toYear, (sketch, year) -> result.merge(sketch));
+        return result;
+    }
+
+    /**
+     * @return how the months of the measurements of this station have been visited by the filtered scans so far
+     */
+    public ScanStatistics getScanStatistics() {
+        return measurements.getScanStatistics();
+    }
+
+    /**
+     * calculates the exact total of all valid values of a quantity in 0.1 units
+     * across the time period between startDate and endDate (inclusive)
+     *
+     * @param startDate the start date of the period of accumulation (inclusive)
+     * @param endDate   the end date of the period of accumulation (inclusive)
+     * @param quantity  the quantity to be accumulated
+     * @return the raw total across the period
+     */
+    long totalTenthsBetween(LocalDate startDate, LocalDate endDate, Quantity quantity) {
+        MeasurementsBetween period = measurementsBetween(startDate, endDate);
+        return measurements.sumTenths(quantity, period.fromOffset, period.toOffset);
+    }
+
+    /**
+     * merges the valid values of a quantity into the days of a rolling window
+     *
+     * @param window
+     * @param quantity
+     */
+    void addTo(RollingWindow window, Quantity quantity) {
+        int from = (int) Math.min(measurements.length(), Math.max(0, measurements.offsetOf(window.getLeadDay())));
+        int to = (int) Math.min(measurements.length(), Math.max(from, measurements.offsetOf(window.getLastDay()) + 1));
+        for (int offset = measurements.nextValid(quantity, from); offset >= 0 && offset < to;
+             offset = measurements.nextValid(quantity, offset + 1)) {
+            window.add(measurements.dayAt(offset), measurements.getTenths(quantity, offset));
+        }
+    }
+
+    /**
+     * passes the monthly totals of a quantity to the consumer in order of the months
+     *
+     * @param quantity
+     * @param consumer
+     */
+    void forEachMonth(Quantity quantity, MonthlyRollup.CellConsumer consumer) {
+        measurements.forEachMonth(quantity, consumer);
+    }
+
+    /**
+     * passes the quantile sketches of a quantity of the years between fromYear and toYear (inclusive) in order of the years
+     *
+     * @param quantity
+     * @param fromYear
+     * @param toYear
+     * @param consumer receives the sketch and its year, the sketch shall not be changed
+     */
+    void forEachSketch(Quantity quantity, int fromYear, int toYear, ObjIntConsumer<QuantileSketch> consumer) {
+        measurements.forEachSketch(quantity, fromYear, toYear, consumer);
+    }
+
+    /**
+     * passes the raw values of all days with a measurement to the consumer in order of their date
+     *
+     * @param consumer
+     */
+    void forEachDay(DailyValuesConsumer consumer) {
+        measurements.forEachDay(consumer);
+    }
+
+    /**
+     * provides a view of the measurements between startDate and endDate (inclusive)
+     *
+     * @param startDate
+     * @param endDate
+     * @return the view of the period
+     */
+    private MeasurementsBetween measurementsBetween(LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("startDate is after endDate");
+        }
+        // clip the period to the range of the series
+        int from = (int) Math.min(measurements.length(), Math.max(0, measurements.offsetOf(startDate.toEpochDay())));
+        int to = (int) Math.min(measurements.length(), Math.max(from, measurements.offsetOf(endDate.toEpochDay()) + 1));
+        return new MeasurementsBetween(from, to);
+    }
+
+    /**
+     * a read-only view of the measurements in a range of offsets of the series
+     * the Measurement instances are recreated from the columnar storage by the iterator
+     */
+    private class MeasurementsBetween extends AbstractCollection<Measurement> {
+        private final int fromOffset;   // inclusive
+        private final int toOffset;     // exclusive
+
+        private MeasurementsBetween(int fromOffset, int toOffset) {
+            this.fromOffset = fromOffset;
+            this.toOffset = toOffset;
+        }
+
+        @Override
+        public int size() {
+            return fromOffset == 0 && toOffset == measurements.length()
+                    ? measurements.size() : measurements.countPresent(fromOffset, toOffset);
+        }
+
+        @Override
+        public Iterator<Measurement> iterator() {
+            return new Iterator<>() {
+                private int next = nextOffset(fromOffset);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public Measurement next() {
+                    if (next < 0) throw new NoSuchElementException();
+                    Measurement measurement = toMeasurement(next);
+                    next = nextOffset(next + 1);
+                    return measurement;
+                }
+            };
+        }
+
+        private int nextOffset(int offset) {
+            int next = measurements.nextPresent(offset);
+            return next < toOffset ? next : -1;
+        }
+    }
+
+    /**
+     * applies a custom mapper to all days with a measurement in a range of offsets
+     * and passes the valid values in order of their date
+     * a single Measurement instance is moved from day to day, so the mapper and action should not keep it
+     *
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @param mapper     a getter method or expression that obtains a double value from a measurement
+     * @param action     receives the measurement and its value, if the value is not Double.NaN
+     */
+    void forEachValue(int fromOffset, int toOffset,
+                      ToDoubleFunction<Measurement> mapper, ObjDoubleConsumer<Measurement> action) {
+        Measurement measurement = null;
+        for (int offset = measurements.nextPresent(fromOffset); offset >= 0 && offset < toOffset;
+             offset = measurements.nextPresent(offset + 1)) {
+            measurement = measurement == null ? toMeasurement(offset) : moveTo(measurement, offset);
+            double value = mapper.applyAsDouble(measurement);
+            if (!Double.isNaN(value)) {
+                action.accept(measurement, value);
+            }
+        }
+    }
+
+    /**
+     * applies a custom mapper to all days with a measurement
+     *
+     * @param mapper a getter method or expression that obtains a double value from a measurement
+     * @param action receives the measurement and its value, if the value is not Double.NaN
+     * @see #forEachValue(int, int, ToDoubleFunction, ObjDoubleConsumer)
+     */
+    void forEachValue(ToDoubleFunction<Measurement> mapper, ObjDoubleConsumer<Measurement> action) {
+        forEachValue(0, measurements.length(), mapper, action);
+    }
+
+    /**
+     * recreates the measurement at the offset from the columnar storage
+     *
+     * @param offset
+     * @return a new Measurement instance
+     */
+    private Measurement toMeasurement(int offset) {
+        return moveTo(Measurement.ofEpochDay(this, measurements.dayAt(offset)), offset);
+    }
+
+    /**
+     * replaces the date and all values of a measurement by those at the offset in the columnar storage
+     *
+     * @param measurement
+     * @param offset
+     * @return the measurement
+     */
+    private Measurement moveTo(Measurement measurement, int offset) {
+        measurement.moveTo(measurements.dayAt(offset));
+        for (Quantity quantity : QUANTITIES) {
+            quantity.setValue(measurement, measurements.getValue(quantity, offset));
+        }
+        return measurement;
     }
 
     /**
@@ -0,0 +1,484 @@
+package models;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * @author Costa van Elsas
+ * Columnar storage of the daily measurements of a single station
+ * Every quantity is kept in its own column, indexed by the offset of the day from the origin of the series.
+ * Values are stored in fixed point as the raw tenths of the KNMI files, with MISSING for an invalid value,
+ * and are only converted to degrees, millimetres etc. when they leave the series.
+ * The columns are compressed in blocks of PackedColumn.BLOCK_SIZE days, which start at block-aligned epoch days;
+ * the blocks that are complete are packed by compact().
+ * A bitmap registers which days hold a measurement, so no objects are kept per day.
+ */
+class TimeSeries {
+    private static final Quantity[] QUANTITIES = Quantity.values();
+    static final double TENTHS = 10.0;              // the number of raw units per whole unit
+
+    static final short MISSING = Short.MIN_VALUE;   // the stored value of an empty or invalid field
+
+    private int origin;             // the epoch day at offset 0, the first day of a block
+    private int length = 0;         // the number of offsets in use, up to and including the last day
+    private int size = 0;           // the number of days with a measurement
+    private BitSet present = new BitSet();
+    private final PackedColumn[] columns = new PackedColumn[QUANTITIES.length];   // in 0.1 units, or MISSING
+
+    private final ScanStatistics scanStatistics = new ScanStatistics();
+
+    // totals by calendar month, maintained with every added day
+    private final MonthlyRollup rollup = new MonthlyRollup();
+
+    // quantile sketches of the valid values by year and quantity ordinal, maintained with every added day
+    private final TreeMap<Integer, QuantileSketch[]> sketches = new TreeMap<>();
+
+    TimeSeries() {
+        for (int q = 0; q < QUANTITIES.length; q++) {
+            columns[q] = new PackedColumn();
+        }
+    }
+
+    /**
+     * @return the number of days with a measurement
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of offsets in use
+     */
+    int length() {
+        return length;
+    }
+
+    int getOrigin() {
+        return origin;
+    }
+
+    /**
+     * @param epochDay
+     * @return the offset of the day, which may be out of the range of the series
+     */
+    long offsetOf(long epochDay) {
+        return epochDay - origin;
+    }
+
+    int dayAt(int offset) {
+        return origin + offset;
+    }
+
+    /**
+     * @param offset
+     * @return the first offset from offset onwards that holds a measurement, or -1 if there is none
+     */
+    int nextPresent(int offset) {
+        return present.nextSetBit(offset);
+    }
+
+    /**
+     * @param quantity
+     * @param offset
+     * @return the first offset from offset onwards that holds a valid value of the quantity, or -1 if there is none
+     */
+    int nextValid(Quantity quantity, int offset) {
+        return columns[quantity.ordinal()].nextValid(offset);
+    }
+
+    /**
+     * @param quantity
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @return the offsets in the range that hold a valid value of the quantity, in ascending order
+     */
+    IntStream validOffsets(Quantity quantity, int fromOffset, int toOffset) {
+        return IntStream.iterate(nextValid(quantity, fromOffset),
+                offset -> offset >= 0 && offset < toOffset,
+                offset -> nextValid(quantity, offset + 1));
+    }
+
+    boolean isPresent(int offset) {
+        return present.get(offset);
+    }
+
+    boolean isValid(Quantity quantity, int offset) {
+        return columns[quantity.ordinal()].isValid(offset);
+    }
+
+    /**
+     * @param quantity
+     * @param offset
+     * @return the value of the quantity at the offset, Double.NaN if it is not valid
+     */
+    double getValue(Quantity quantity, int offset) {
+        return fromTenths(getTenths(quantity, offset));
+    }
+
+    /**
+     * @param quantity
+     * @param offset
+     * @return the raw value of the quantity at the offset in 0.1 units, MISSING if it is not valid
+     */
+    int getTenths(Quantity quantity, int offset) {
+        return offset < length ? columns[quantity.ordinal()].get(offset) : MISSING;
+    }
+
+    /**
+     * @param quantity
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @return the exact sum of the valid values of the quantity in the range, in 0.1 units
+     */
+    long sumTenths(Quantity quantity, int fromOffset, int toOffset) {
+        return fromOffset >= toOffset ? 0 : columns[quantity.ordinal()].sum(fromOffset, toOffset);
+    }
+
+    /**
+     * @param quantity
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @return the number of valid values of the quantity in the range
+     */
+    int countValid(Quantity quantity, int fromOffset, int toOffset) {
+        return fromOffset >= toOffset ? 0 : columns[quantity.ordinal()].count(fromOffset, toOffset);
+    }
+
+    /**
+     * @param quantity
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @return the offset of the maximum valid value of the quantity in the range (the earliest one on a tie),
+     * or -1 if the range holds no valid value
+     */
+    int argMax(Quantity quantity, int fromOffset, int toOffset) {
+        return fromOffset >= toOffset ? -1 : columns[quantity.ordinal()].argMax(fromOffset, toOffset);
+    }
+
+    /**
+     * @param quantity
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @return the offset of the minimum valid value of the quantity in the range (the earliest one on a tie),
+     * or -1 if the range holds no valid value
+     */
+    int argMin(Quantity quantity, int fromOffset, int toOffset) {
+        return fromOffset >= toOffset ? -1 : columns[quantity.ordinal()].argMin(fromOffset, toOffset);
+    }
+
+    /**
+     * @param quantity
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @param lower      the lowest matching value in 0.1 units
+     * @param upper      the highest matching value in 0.1 units
+     * @param action     receives the offsets of the matching values in ascending order, or null if only counting
+     * @return the number of valid values of the quantity within the bounds in the range
+     */
+    int scanWithin(Quantity quantity, int fromOffset, int toOffset, int lower, int upper, IntConsumer action) {
+        if (fromOffset >= toOffset || lower > upper) return 0;
+        PackedColumn column = columns[quantity.ordinal()];
+        toOffset = Math.min(toOffset, length);
+
+        // the minimum and maximum of every month in the rollup act as a zone map
+        MonthlyRollup.Cell cell = new MonthlyRollup.Cell();
+        int count = 0;
+        for (int from = fromOffset; from < toOffset; ) {
+            int day = dayAt(from);
+            int to = (int) Math.min(toOffset, offsetOf(EpochDays.startOfNextMonth(day)));
+            rollup.cellOf(quantity, EpochDays.yearOf(day), EpochDays.monthOf(day), cell);
+            if (cell.count == 0 || cell.max < lower || cell.min > upper) {
+                scanStatistics.pruned();
+            } else if (lower <= cell.min && cell.max <= upper) {
+                // all valid values of the month match, so only the bitmap is needed
+                scanStatistics.summarized();
+                if (action == null) {
+                    count += column.count(from, to);
+                } else {
+                    for (int offset = column.nextValid(from); offset >= 0 && offset < to; offset = column.nextValid(offset + 1)) {
+                        count++;
+                        action.accept(offset);
+                    }
+                }
+            } else {
+                scanStatistics.decoded();
+                count += column.filter(from, to, lower, upper, action);
+            }
+            from = to;
+        }
+        return count;
+    }
+
+    /**
+     * @return how the months of the series have been visited by all filtered scans
+     */
+    ScanStatistics getScanStatistics() {
+        return scanStatistics;
+    }
+
+    /**
+     * packs the blocks of all columns that have been completed
+     * the block of the last day stays open, so appending days does not unpack it again
+     */
+    void compact() {
+        if (length == 0) return;
+        for (PackedColumn column : columns) {
+            column.seal((length - 1) >> PackedColumn.BLOCK_SHIFT);
+        }
+        // the sketches of the years before the last day are unlikely to change
+        for (QuantileSketch[] yearSketches : sketches.headMap(EpochDays.yearOf(dayAt(length - 1))).values()) {
+            for (QuantileSketch sketch : yearSketches) {
+                if (sketch != null) sketch.trim();
+            }
+        }
+    }
+
+    /**
+     * moves the packed blocks of all columns into an arena
+     *
+     * @param arena the arena, or null to keep the packed blocks on the heap
+     */
+    void setArena(BlockArena arena) {
+        for (PackedColumn column : columns) {
+            column.setArena(arena);
+        }
+    }
+
+    /**
+     * @return an estimate of the number of bytes in use by the values of the series on the heap
+     */
+    long estimatedBytes() {
+        long bytes = present.size() / 8;
+        for (PackedColumn column : columns) {
+            bytes += column.estimatedBytes();
+        }
+        for (QuantileSketch[] yearSketches : sketches.values()) {
+            for (QuantileSketch sketch : yearSketches) {
+                if (sketch != null) bytes += sketch.estimatedBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * converts a raw value at the boundary of the series
+     *
+     * @param tenths a value in 0.1 units, or MISSING
+     * @return the value in whole units, Double.NaN for MISSING
+     */
+    static double fromTenths(int tenths) {
+        return tenths == MISSING ? Double.NaN : tenths / TENTHS;
+    }
+
+    /**
+     * converts an exact total at the boundary of the series into an average
+     * the division is done once, so the result is the correctly rounded average
+     *
+     * @param sumTenths the total of the values in 0.1 units
+     * @param count     the number of values
+     * @return the average in whole units, Double.NaN if there are no values
+     */
+    static double averageOfTenths(long sumTenths, long count) {
+        return count == 0 ? Double.NaN : sumTenths / (count * TENTHS);
+    }
+
+    /**
+     * converts an inclusive lower bound of values to the fixed point representation of the series
+     *
+     * @param lower a value in whole units, or Double.NEGATIVE_INFINITY
+     * @return the lowest raw value that is at least lower, beyond Short.MAX_VALUE if none can be stored
+     */
+    static int lowerBoundOfTenths(double lower) {
+        if (Double.isNaN(lower)) throw new IllegalArgumentException("The lower bound is not a number");
+        if (lower > Short.MAX_VALUE / TENTHS) return Short.MAX_VALUE + 1;
+        if (lower < (MISSING + 1) / TENTHS) return MISSING + 1;
+        int tenths = (int) Math.ceil(lower * TENTHS);
+        // correct the rounding of the multiplication, the bound applies to the converted values
+        while (fromTenths(tenths - 1) >= lower) tenths--;
+        while (fromTenths(tenths) < lower) tenths++;
+        return tenths;
+    }
+
+    /**
+     * converts an inclusive upper bound of values to the fixed point representation of the series
+     *
+     * @param upper a value in whole units, or Double.POSITIVE_INFINITY
+     * @return the highest raw value that is at most upper, below MISSING + 1 if none can be stored
+     */
+    static int upperBoundOfTenths(double upper) {
+        if (Double.isNaN(upper)) throw new IllegalArgumentException("The upper bound is not a number");
+        if (upper < (MISSING + 1) / TENTHS) return MISSING;
+        if (upper > Short.MAX_VALUE / TENTHS) return Short.MAX_VALUE;
+        int tenths = (int) Math.floor(upper * TENTHS);
+        while (fromTenths(tenths + 1) <= upper) tenths++;
+        while (fromTenths(tenths) > upper) tenths--;
+        return tenths;
+    }
+
+    /**
+     * converts a value to the fixed point representation of the series
+     *
+     * @param value a value in whole units, or Double.NaN
+     * @return the value rounded to 0.1 units, MISSING for Double.NaN
+     * @throws IllegalArgumentException when the value cannot be represented
+     */
+    static short toTenths(double value) {
+        if (Double.isNaN(value)) return MISSING;
+        long tenths = Math.round(value * TENTHS);
+        if (tenths <= MISSING || tenths > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Value %s is out of the range of the storage", value));
+        }
+        return (short) tenths;
+    }
+
+    /**
+     * @param fromOffset inclusive
+     * @param toOffset   exclusive
+     * @return the number of days with a measurement in the range
+     */
+    int countPresent(int fromOffset, int toOffset) {
+        return fromOffset >= toOffset ? 0 : present.get(fromOffset, toOffset).cardinality();
+    }
+
+    /**
+     * passes the monthly totals of a quantity in order of the months
+     *
+     * @param quantity
+     * @param consumer
+     */
+    void forEachMonth(Quantity quantity, MonthlyRollup.CellConsumer consumer) {
+        rollup.forEachMonth(quantity, consumer);
+    }
+
+    /**
+     * passes the quantile sketches of a quantity of the years between fromYear and toYear (inclusive) in order of the years
+     * years without any valid value of the quantity are skipped
+     *
+     * @param quantity
+     * @param fromYear
+     * @param toYear
+     * @param consumer receives the sketch and its year, the sketch shall not be changed
+     */
+    void forEachSketch(Quantity quantity, int fromYear, int toYear, ObjIntConsumer<QuantileSketch> consumer) {
+        if (fromYear > toYear) return;
+        for (Map.Entry<Integer, QuantileSketch[]> entry : sketches.subMap(fromYear, true, toYear, true).entrySet()) {
+            QuantileSketch sketch = entry.getValue()[quantity.ordinal()];
+            if (sketch != null) consumer.accept(sketch, entry.getKey());
+        }
+    }
+
+    /**
+     * passes the raw values of all days with a measurement to the consumer in order of their date
+     *
+     * @param consumer
+     */
+    void forEachDay(DailyValuesConsumer consumer) {
+        int[] tenths = new int[QUANTITIES.length];
+        short[][] blockValues = new short[QUANTITIES.length][];
+        int blockIndex = -1;
+        for (int offset = nextPresent(0); offset >= 0; offset = nextPresent(offset + 1)) {
+            if (offset >> PackedColumn.BLOCK_SHIFT != blockIndex) {
+                // decode every block of the columns once
+                blockIndex = offset >> PackedColumn.BLOCK_SHIFT;
+                for (int q = 0; q < QUANTITIES.length; q++) {
+                    blockValues[q] = columns[q].valuesOfBlock(blockIndex);
+                }
+            }
+            int position = offset & (PackedColumn.BLOCK_SIZE - 1);
+            for (int q = 0; q < QUANTITIES.length; q++) {
+                tenths[q] = blockValues[q] == null ? MISSING : blockValues[q][position];
+            }
+            consumer.accept(dayAt(offset), tenths);
+        }
+    }
+
+    /**
+     * adds the values of a measurement to the series
+     *
+     * @param measurement
+     * @return false if the series already holds a measurement of the same day
+     */
+    boolean add(Measurement measurement) {
+        // convert all values before storing any of them, so an unrepresentable value leaves the series unchanged
+        short[] tenths = new short[QUANTITIES.length];
+        for (Quantity quantity : QUANTITIES) {
+            tenths[quantity.ordinal()] = toTenths(quantity.applyAsDouble(measurement));
+        }
+        return add(measurement.getEpochDay(), tenths);
+    }
+
+    /**
+     * adds the raw values of a day to the series
+     *
+     * @param epochDay
+     * @param tenths   the raw value of every quantity by its ordinal, or MISSING
+     * @return false if the series already holds a measurement of the same day
+     */
+    boolean add(int epochDay, short[] tenths) {
+        int offset = reserve(epochDay);
+        if (present.get(offset)) return false;
+
+        present.set(offset);
+        size++;
+        for (int q = 0; q < QUANTITIES.length; q++) {
+            columns[q].set(offset, tenths[q]);
+        }
+        int year = EpochDays.yearOf(epochDay);
+        rollup.add(year, EpochDays.monthOf(epochDay), tenths);
+        QuantileSketch[] yearSketches = sketches.computeIfAbsent(year, y -> new QuantileSketch[QUANTITIES.length]);
+        for (int q = 0; q < QUANTITIES.length; q++) {
+            if (tenths[q] == MISSING) continue;
+            if (yearSketches[q] == null) yearSketches[q] = new QuantileSketch();
+            yearSketches[q].add(tenths[q]);
+        }
+        return true;
+    }
+
+    /**
+     * extends the range of the series to include the epoch day
+     *
+     * @param epochDay
+     * @return the offset of the day
+     */
+    private int reserve(int epochDay) {
+        if (length == 0) {
+            origin = epochDay - Math.floorMod(epochDay, PackedColumn.BLOCK_SIZE);
+        }
+        if (epochDay < origin) {
+            // move the origin back by whole blocks, so the blocks themselves do not change
+            shiftForward((origin - epochDay + PackedColumn.BLOCK_SIZE - 1) >> PackedColumn.BLOCK_SHIFT);
+        }
+        int offset = epochDay - origin;
+        if (offset >= length) {
+            length = offset + 1;
+        }
+        return offset;
+    }
+
+    /**
+     * moves all data numBlocks blocks towards the end and moves the origin back by as many days
+     *
+     * @param numBlocks
+     */
+    private void shiftForward(int numBlocks) {
+        int shift = numBlocks << PackedColumn.BLOCK_SHIFT;
+        for (PackedColumn column : columns) {
+            column.prepend(numBlocks);
+        }
+        present = shifted(present, shift);
+        origin -= shift;
+        length += shift;
+    }
+
+    private static BitSet shifted(BitSet bits, int shift) {
+        BitSet shiftedBits = new BitSet(bits.length() + shift);
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            shiftedBits.set(i + shift);
+        }
+        return shiftedBits;
+    }
+}
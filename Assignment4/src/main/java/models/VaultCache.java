@@ -0,0 +1,262 @@
+package models;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * @author Costa van Elsas
+ * Binary cache of an imported vault, so that a next import does not need to parse the text files again
+ * The cache holds one entry per source file: a manifest line with the size, modification time and CRC32 checksum
+ * of the source, followed by the measurements of the file in columns of raw values.
+ * The cache is read through a memory mapping of the file; only the entries of changed files need to be parsed again.
+ * <p>
+ * Layout (big-endian):
+ * magic, version, number of entries, and per entry:
+ * path (length + UTF-8), size, modification time, checksum, station number, number of days,
+ * the epoch days as int, and for every quantity the raw values of all days as short.
+ */
+class VaultCache {
+    private static final int MAGIC = 0x4B4E4D56;    // "KNMV"
+    private static final int VERSION = 1;
+    private static final Quantity[] QUANTITIES = Quantity.values();
+    private static final int NUM_QUANTITIES = QUANTITIES.length;
+
+    /**
+     * the cached content of one source file
+     */
+    static class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final long checksum;
+        private final int stn;              // the station of the measurements, or -1 if there are none
+        private final int[] epochDays;
+        private final short[][] tenths;     // the raw values by quantity ordinal and day
+
+        Entry(String path, long size, long lastModified, long checksum, int stn, int[] epochDays, short[][] tenths) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.stn = stn;
+            this.epochDays = epochDays;
+            this.tenths = tenths;
+        }
+
+        /**
+         * describes the current state of a small source file, which is read again for its checksum
+         *
+         * @param source       the source file
+         * @param measurements the measurements of the file, which should all belong to the same station
+         * @return a new entry
+         */
+        static Entry of(Path source, Collection<Measurement> measurements) {
+            byte[] content = MeasurementFileReader.readBytes(source, 0);
+            return of(source, content.length, checksum(content), measurements);
+        }
+
+        /**
+         * describes the state of a source file from the content that has been parsed already,
+         * and the measurements that have been read from it
+         *
+         * @param source       the source file
+         * @param size         the number of bytes of the content that has been read
+         * @param checksum     the checksum of that content
+         * @param measurements the measurements of the file, which should all belong to the same station
+         * @return a new entry
+         */
+        static Entry of(Path source, long size, long checksum, Collection<Measurement> measurements) {
+            List<Measurement> days = new ArrayList<>(measurements);
+            days.sort(Comparator.comparingInt(Measurement::getEpochDay));
+
+            int[] epochDays = new int[days.size()];
+            short[][] tenths = new short[NUM_QUANTITIES][days.size()];
+            for (int d = 0; d < days.size(); d++) {
+                epochDays[d] = days.get(d).getEpochDay();
+                for (Quantity quantity : QUANTITIES) {
+                    tenths[quantity.ordinal()][d] = TimeSeries.toTenths(quantity.applyAsDouble(days.get(d)));
+                }
+            }
+            int stn = days.isEmpty() ? -1 : days.get(0).getStation().getStn();
+
+            try {
+                return new Entry(source.toString(), size, Files.getLastModifiedTime(source).toMillis(),
+                        checksum, stn, epochDays, tenths);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot describe source file: " + source, e);
+            }
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        /**
+         * a source file is considered unchanged if its size and modification time are the same,
+         * or if only its modification time has changed, but not its checksum
+         *
+         * @param source
+         * @return whether the entry still reflects the content of the source file
+         */
+        boolean isUpToDate(Path source) {
+            try {
+                if (Files.size(source) != size) return false;
+                return Files.getLastModifiedTime(source).toMillis() == lastModified || checksum(source) == checksum;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * adds the days of the entry to their station, which shall be compacted after the last entry
+         *
+         * @param stations the known stations by their number
+         * @return the number of days that have been added
+         * @throws InputMismatchException if a day is already present at the station
+         */
+        int addTo(Map<Integer, Station> stations) {
+            Station station = stations.get(stn);
+            if (station == null || epochDays.length == 0) return 0;
+
+            int numAdded = station.addDays(epochDays, tenths);
+            if (numAdded != epochDays.length) {
+                throw new InputMismatchException(String.format("Some items in file %s could not be added", path));
+            }
+            return numAdded;
+        }
+    }
+
+    /**
+     * reads all entries of a cache file
+     *
+     * @param cacheFile
+     * @return the entries by the path of their source file,
+     * an empty map if the cache file does not exist or cannot be read
+     */
+    static Map<String, Entry> read(Path cacheFile) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!Files.isRegularFile(cacheFile)) return entries;
+
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return entries;
+
+            int numEntries = buffer.getInt();
+            for (int e = 0; e < numEntries; e++) {
+                Entry entry = readEntry(buffer);
+                entries.put(entry.path, entry);
+            }
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            // a damaged or incompatible cache is ignored, it will be replaced on the next write
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static Entry readEntry(ByteBuffer buffer) {
+        byte[] path = new byte[readLength(buffer, Byte.BYTES)];
+        buffer.get(path);
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        long checksum = buffer.getLong();
+        int stn = buffer.getInt();
+
+        int[] epochDays = new int[readLength(buffer, Integer.BYTES + NUM_QUANTITIES * Short.BYTES)];
+        buffer.asIntBuffer().get(epochDays);
+        buffer.position(buffer.position() + epochDays.length * Integer.BYTES);
+        short[][] tenths = new short[NUM_QUANTITIES][epochDays.length];
+        for (short[] column : tenths) {
+            buffer.asShortBuffer().get(column);
+            buffer.position(buffer.position() + column.length * Short.BYTES);
+        }
+        return new Entry(new String(path, StandardCharsets.UTF_8), size, lastModified, checksum, stn, epochDays, tenths);
+    }
+
+    /**
+     * reads the length of an array, which shall fit in the remaining bytes of the buffer
+     * so a damaged length is reported before the array is allocated
+     *
+     * @param buffer
+     * @param bytesPerElement the number of bytes that follow for every element
+     * @return the length
+     * @throws BufferUnderflowException if the length is negative or exceeds the remaining bytes
+     */
+    private static int readLength(ByteBuffer buffer, int bytesPerElement) {
+        int length = buffer.getInt();
+        if (length < 0 || (long) length * bytesPerElement > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+
+    /**
+     * writes all entries into a new cache file, which replaces the old one at once
+     *
+     * @param cacheFile
+     * @param entries
+     */
+    static void write(Path cacheFile, Collection<Entry> entries) {
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tempFile = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    writeEntry(out, entry);
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write vault cache: " + cacheFile, e);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        byte[] path = entry.path.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(path.length);
+        out.write(path);
+        out.writeLong(entry.size);
+        out.writeLong(entry.lastModified);
+        out.writeLong(entry.checksum);
+        out.writeInt(entry.stn);
+
+        out.writeInt(entry.epochDays.length);
+        for (int epochDay : entry.epochDays) {
+            out.writeInt(epochDay);
+        }
+        for (short[] column : entry.tenths) {
+            for (short value : column) {
+                out.writeShort(value);
+            }
+        }
+    }
+
+    /**
+     * @param source
+     * @return the CRC32 checksum of the content of the file
+     */
+    static long checksum(Path source) {
+        return checksum(MeasurementFileReader.readBytes(source, 0));
+    }
+
+    /**
+     * @param content
+     * @return the CRC32 checksum of the content
+     */
+    static long checksum(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+}
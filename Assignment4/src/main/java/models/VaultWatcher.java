@@ -0,0 +1,183 @@
+package models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * @author Costa van Elsas
+ * Watches the measurements folder of an imported vault and adds new measurements to the tracker as they arrive
+ * For every file the watcher remembers up to which byte it has been processed, so a changed file is only
+ * read from that offset onwards and only its complete lines are parsed; a line that is still being written
+ * is picked up by a later change. The indexes and rollups of the stations are extended by the new days only.
+ * <p>
+ * The watcher does not start a thread of its own: changes are processed by poll(),
+ * which should be called from the thread that also queries the tracker.
+ */
+public class VaultWatcher implements Closeable {
+    private final ClimateTracker tracker;
+    private final String filePattern;
+    private final WatchService watchService;
+    private final Map<Path, Long> offsets = new HashMap<>();   // the number of bytes processed by file
+
+    /**
+     * starts watching the folder and all of its sub folders
+     * the files that are in the folder already are considered to be imported up to their current size
+     *
+     * @param tracker     the tracker to which the measurements shall be added
+     * @param folder      the measurements folder of the vault
+     * @param filePattern the pattern of the names of measurement files
+     * @throws IOException if the folder cannot be watched
+     */
+    VaultWatcher(ClimateTracker tracker, Path folder, String filePattern) throws IOException {
+        this.tracker = tracker;
+        this.filePattern = filePattern;
+        this.watchService = folder.getFileSystem().newWatchService();
+        register(folder, false);
+    }
+
+    /**
+     * waits for changes in the folder and processes all changes that are pending
+     *
+     * @param timeout the maximum time to wait for the first change
+     * @param unit
+     * @return the number of days that have been added to the stations
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public int poll(long timeout, TimeUnit unit) throws InterruptedException {
+        WatchKey key = watchService.poll(timeout, unit);
+        int numAdded = 0;
+        while (key != null) {
+            numAdded += process(key);
+            key = watchService.poll();
+        }
+        return numAdded;
+    }
+
+    /**
+     * processes all changes that are pending without waiting
+     *
+     * @return the number of days that have been added to the stations
+     */
+    public int poll() {
+        int numAdded = 0;
+        for (WatchKey key = watchService.poll(); key != null; key = watchService.poll()) {
+            numAdded += process(key);
+        }
+        return numAdded;
+    }
+
+    /**
+     * reads all watched files again from their offsets, which catches up on changes that have been missed
+     *
+     * @return the number of days that have been added to the stations
+     */
+    public int rescan() {
+        int numAdded = 0;
+        for (Path file : offsets.keySet().toArray(new Path[0])) {
+            numAdded += ingest(file);
+        }
+        return numAdded;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private int process(WatchKey key) {
+        Path folder = (Path) key.watchable();
+        int numAdded = 0;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // events have been lost, so every file is checked
+                numAdded += rescan();
+                continue;
+            }
+            Path path = folder.resolve((Path) event.context());
+            if (Files.isDirectory(path)) {
+                // a new sub folder may already hold files before it is watched
+                if (event.kind() == ENTRY_CREATE) numAdded += register(path, true);
+            } else if (event.kind() != ENTRY_DELETE && isMeasurementFile(path)) {
+                numAdded += ingest(path);
+            }
+        }
+        key.reset();
+        return numAdded;
+    }
+
+    /**
+     * watches a folder and its sub folders
+     *
+     * @param folder
+     * @param ingest whether the files in the folder are new and shall be read, or have been imported already
+     * @return the number of days that have been added to the stations
+     */
+    private int register(Path folder, boolean ingest) {
+        int numAdded = 0;
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (Files.isDirectory(path)) {
+                    path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                } else if (isMeasurementFile(path)) {
+                    if (ingest) {
+                        numAdded += ingest(path);
+                    } else {
+                        offsets.put(path, Files.size(path));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot watch folder: " + folder, e);
+        }
+        return numAdded;
+    }
+
+    /**
+     * adds the complete lines of a file after its offset to the tracker
+     * a file that has become shorter has been replaced, so it is read from the start,
+     * the days that are present already are ignored by their station
+     *
+     * @param file
+     * @return the number of days that have been added to the stations
+     */
+    private int ingest(Path file) {
+        long offset = offsets.getOrDefault(file, 0L);
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            // the file has been removed in the meantime
+            offsets.remove(file);
+            return 0;
+        }
+        if (size < offset) offset = 0;
+        if (size == offset) return 0;
+
+        byte[] content = MeasurementFileReader.readBytes(file, offset);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') end--;     // leave a line that is still being written
+
+        // a new file starts with its header, which may not have been written completely yet:
+        //  nothing is consumed until the header line is complete, so the header is looked for again on the next change
+        int from = 0;
+        if (offset == 0) {
+            from = MeasurementFileReader.endOfCompleteHeader(content, end, MeasurementFileReader.HEADER_PREFIX);
+            if (from < 0) return 0;
+        }
+
+        offsets.put(file, offset + end);
+        return tracker.appendMeasurements(content, from, end);
+    }
+
+    private boolean isMeasurementFile(Path path) {
+        return path.getFileName().toString().matches(filePattern);
+    }
+}
@@ -1,12 +1,27 @@
+import models.ClimateReport;
 import models.ClimateTracker;
+import models.ImportMetrics;
 import models.Measurement;
+import models.QuantileSketch;
+import models.Quantity;
+import models.RollingWindow;
 import models.Station;
+import models.VaultWatcher;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.Month;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -42,6 +57,74 @@ public class ClimateTrackerTest {
         );
     }
 
+    @Test
+    public void parallelImportMatchesSequentialImport() {
+        ClimateTracker parallelTracker = new ClimateTracker();
+        parallelTracker.setImportMode(ClimateTracker.ImportMode.PARALLEL);
+        parallelTracker.importClimateDataFromVault(ClimateTracker.class.getResource("/test").getPath());
+
+        assertEquals(climateTracker.numberOfMeasurementsByStation().toString(),
+                parallelTracker.numberOfMeasurementsByStation().toString());
+        assertEquals(climateTracker.annualAverageTemperatureTrend(), parallelTracker.annualAverageTemperatureTrend());
+        assertEquals(climateTracker.coldestYear(), parallelTracker.coldestYear());
+
+        assertThrows(InputMismatchException.class,
+                () -> parallelTracker.importMeasurementsFromVault(ClimateTracker.class.getResource("/test/measurements").getPath())
+        );
+    }
+
+    @Test
+    public void importHandlesWindowsLineEndingsAndMissingHeaders(@TempDir Path vault) throws IOException {
+        Files.createDirectories(vault.resolve("measurements"));
+        Files.writeString(vault.resolve("stations.txt"), "260, De Bilt\n310, Vlissingen\n");
+        String line1 = "  260,20200101,   95,   36,   36,   77,   12,    5,   24,     ,     ,   23,  -59,     ,   26,     ,     ,     ,   40,   50,     ,     ,   12,    4";
+        String line2 = "  260,20200102,   95,   36,   36,   77,   12,    5,   24,     ,     ,   25,  -59,     ,   26,     ,     ,     ,   40,   50,     ,     ,   -1,   -1";
+        Files.writeString(vault.resolve("measurements/260.txt"),
+                "BRON: KNMI\r\n# STN,YYYYMMDD,   DDVEC\r\n" + line1 + "\r\n" + line2);
+        Files.writeString(vault.resolve("measurements/310.txt"),
+                "  310,20200101,   95,   36,   36,   77,   12,    5,   24,     ,     ,   23,  -59,     ,   26,     ,     ,     ,   40,   50,     ,     ,   12,    4\n");
+
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.importClimateDataFromVault(vault.toString());
+
+        Station deBilt = tracker.findStationById(260);
+        assertEquals(2, deBilt.getMeasurements().size());
+        assertEquals(1.2, deBilt.totalPrecipitationBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 2)), 0.0001);
+        assertEquals(2.4, deBilt.averageBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 2), Measurement::getAverageTemperature), 0.0001);
+        assertEquals(0, tracker.findStationById(310).getMeasurements().size(), "lines before the header are skipped");
+    }
+
+    @Test
+    public void valuesOutOfTheRangeOfTheStorageAreImportedAsMissing(@TempDir Path vault) throws IOException {
+        Files.createDirectories(vault.resolve("measurements"));
+        Files.writeString(vault.resolve("stations.txt"), "260,De Bilt\n");
+        Files.writeString(vault.resolve("measurements/260.txt"), "# STN,YYYYMMDD\n" +
+                "  260,20200101,10,10,10,10,10,10,10,10,10,23,-59,10,26,10,10,10,10,10,10,10,99999,4\n" +
+                "  260,20200102,10,10,10,10,10,10,10,10,10,25,-59,10,26,10,10,10,10,10,10,10,12,-40000\n");
+
+        for (ClimateTracker.ImportMode mode : ClimateTracker.ImportMode.values()) {
+            ClimateTracker tracker = new ClimateTracker();
+            tracker.setImportMode(mode);
+            tracker.setVaultCache(vault.resolve(mode.name() + ".cache"));
+            tracker.importClimateDataFromVault(vault.toString());
+
+            // a corrupt field does not abort the import, only that value is missing
+            Station deBilt = tracker.findStationById(260);
+            assertEquals(2, deBilt.getMeasurements().size(), mode.name());
+            assertEquals(1, deBilt.numValidValues(Quantity.RH), mode.name());
+            assertEquals(1.2, deBilt.totalPrecipitationBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 2)), 0.0001);
+            assertEquals(1, deBilt.numValidValues(Quantity.RHX), mode.name());
+            assertEquals(2.4, deBilt.averageBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 2), Quantity.TG), 0.0001);
+        }
+
+        // the streamed report skips the same values
+        ClimateReport report = new ClimateReport();
+        ClimateReport.Result<Map<Station, Integer>> validCounts = report.validValueCountsByStation(Quantity.RH);
+        ClimateTracker streamingTracker = new ClimateTracker();
+        streamingTracker.streamReport(vault.toString(), report);
+        assertEquals(Map.of(streamingTracker.findStationById(260), 1), validCounts.get());
+    }
+
     @Test
     public void checkStationAccess() {
         assertTrue(climateTracker.getStations().size() > 0);
@@ -91,4 +174,375 @@ public class ClimateTrackerTest {
 
         assertEquals(2020, climateTracker.coldestYear());
     }
+
+    @Test void rangeExtremesMatchFullScans() {
+        assertEquals(climateTracker.annualMaximumTrend(Measurement::getMaxHourlyPrecipitation),
+                climateTracker.annualMaximumTrend(Quantity.RHX));
+        assertEquals(climateTracker.annualMaximumTrend(Measurement::getMaxTemperature),
+                climateTracker.annualMaximumTrend(Quantity.TX));
+
+        LocalDate start = LocalDate.of(2019, 1, 1), end = LocalDate.of(2021, 12, 31);
+        Measurement hottestDay = climateTracker.maxBetween(start, end, Quantity.TX).get();
+        Measurement coldestNight = climateTracker.minBetween(start, end, Quantity.TN).get();
+
+        Collection<Measurement> all = new ArrayList<>();
+        climateTracker.getStations().forEach(station -> all.addAll(station.getMeasurements()));
+        assertEquals(all.stream().mapToDouble(Measurement::getMaxTemperature).filter(t -> !Double.isNaN(t)).max().getAsDouble(),
+                hottestDay.getMaxTemperature());
+        assertEquals(all.stream().mapToDouble(Measurement::getMinTemperature).filter(t -> !Double.isNaN(t)).min().getAsDouble(),
+                coldestNight.getMinTemperature());
+        assertEquals(hottestDay.getMaxTemperature(), hottestDay.getStation().allTimeMaxTemperature());
+        assertTrue(climateTracker.maxBetween(LocalDate.of(1990, 1, 1), LocalDate.of(1990, 12, 31), Quantity.TX).isEmpty());
+    }
+
+    @Test void pipelinedImportMatchesSequentialImport() {
+        ClimateTracker pipelinedTracker = new ClimateTracker();
+        pipelinedTracker.setImportMode(ClimateTracker.ImportMode.PIPELINED);
+        assertNull(pipelinedTracker.getImportMetrics());
+        pipelinedTracker.importClimateDataFromVault(ClimateTracker.class.getResource("/test").getPath());
+
+        assertEquals(climateTracker.numberOfMeasurementsByStation().toString(),
+                pipelinedTracker.numberOfMeasurementsByStation().toString());
+        assertEquals(climateTracker.annualAverageTemperatureTrend(), pipelinedTracker.annualAverageTemperatureTrend());
+        assertEquals(climateTracker.coldestYear(), pipelinedTracker.coldestYear());
+
+        // every stage reports what it has done
+        ImportMetrics metrics = pipelinedTracker.getImportMetrics();
+        assertEquals(List.of("read", "parse", "merge"),
+                metrics.getStages().stream().map(ImportMetrics.Stage::getName).collect(Collectors.toList()));
+        int numMeasurements = climateTracker.numberOfMeasurementsByStation().values().stream().mapToInt(Integer::intValue).sum();
+        assertEquals(numMeasurements, metrics.getStages().get(2).getItems());
+        assertEquals(metrics.getStages().get(0).getBytes(), metrics.getStages().get(1).getBytes());
+        assertTrue(metrics.getElapsedNanos() > 0);
+
+        // a failing merger stops the pipeline and its failure is reported
+        assertThrows(InputMismatchException.class,
+                () -> pipelinedTracker.importMeasurementsFromVault(ClimateTracker.class.getResource("/test/measurements").getPath())
+        );
+    }
+
+    @Test void pipelinedImportPacksEveryBlockOnce(@TempDir Path vault) throws IOException {
+        // a file of several chunks, of which the batches reach the merger out of order
+        Files.createDirectories(vault.resolve("measurements"));
+        Files.writeString(vault.resolve("stations.txt"), "260,De Bilt\n");
+        StringBuilder content = new StringBuilder("# STN,YYYYMMDD\n");
+        Random random = new Random(5);
+        for (LocalDate day = LocalDate.of(1980, 1, 1); day.getYear() < 2020; day = day.plusDays(1)) {
+            content.append(String.format("  260,%d,10,10,10,10,10,10,10,10,10,%d,%d,10,%d,10,10,10,10,10,10,10,%d,4%n",
+                    day.getYear() * 10000 + day.getMonthValue() * 100 + day.getDayOfMonth(),
+                    random.nextInt(300), random.nextInt(200) - 100, random.nextInt(350), random.nextInt(100)));
+        }
+        Files.writeString(vault.resolve("measurements/260.txt"), content);
+
+        ClimateTracker sequentialTracker = new ClimateTracker();
+        sequentialTracker.setStorageMode(ClimateTracker.StorageMode.OFF_HEAP);
+        sequentialTracker.importClimateDataFromVault(vault.toString());
+        ClimateTracker pipelinedTracker = new ClimateTracker();
+        pipelinedTracker.setStorageMode(ClimateTracker.StorageMode.OFF_HEAP);
+        pipelinedTracker.setImportMode(ClimateTracker.ImportMode.PIPELINED);
+        pipelinedTracker.importClimateDataFromVault(vault.toString());
+
+        assertEquals(sequentialTracker.numberOfMeasurementsByStation().toString(),
+                pipelinedTracker.numberOfMeasurementsByStation().toString());
+        assertEquals(sequentialTracker.annualAverageTemperatureTrend(), pipelinedTracker.annualAverageTemperatureTrend());
+        // a block that is packed again would leave its old memory behind in the arena
+        assertEquals(sequentialTracker.getOffHeapBytes(), pipelinedTracker.getOffHeapBytes());
+    }
+
+    @Test void reportResultsAreIdenticalToTheIndividualMethods() {
+        for (boolean parallel : new boolean[] {false, true}) {
+            ClimateReport report = new ClimateReport().setParallel(parallel);
+            ClimateReport.Result<Map<Station, Integer>> measurementCounts = report.measurementCountsByStation();
+            ClimateReport.Result<Map<Station, LocalDate>> firstDays = report.firstDayByStation();
+            ClimateReport.Result<Map<Station, Integer>> validSolarCounts = report.validValueCountsByStation(Quantity.SQ);
+            ClimateReport.Result<Map<Integer, Double>> averageTemperatures = report.annualAverages(Quantity.TG);
+            ClimateReport.Result<Map<Integer, Double>> maxHourlyPrecipitation = report.annualMaxima(Quantity.RHX);
+            ClimateReport.Result<Map<Month, Double>> solarProfile = report.monthlyAverages(Quantity.SQ);
+            ClimateReport.Result<Integer> coldestYear = report.coldestYear();
+            assertThrows(IllegalStateException.class, coldestYear::get);
+
+            climateTracker.runReport(report);
+
+            assertEquals(climateTracker.numberOfMeasurementsByStation(), measurementCounts.get());
+            assertEquals(climateTracker.firstDayOfMeasurementByStation(), firstDays.get());
+            assertEquals(climateTracker.numberOfValidValuesByStation(Measurement::getSolarHours), validSolarCounts.get());
+            assertEquals(climateTracker.annualAverageTemperatureTrend(), averageTemperatures.get());
+            assertEquals(climateTracker.annualMaximumTrend(Measurement::getMaxHourlyPrecipitation), maxHourlyPrecipitation.get());
+            assertEquals(climateTracker.allTimeAverageDailySolarByMonth(), solarProfile.get());
+            assertEquals(climateTracker.coldestYear(), coldestYear.get());
+        }
+    }
+
+    @Test void streamedReportIsIdenticalToTheReportOnTheImport() {
+        ClimateReport report = new ClimateReport();
+        ClimateReport.Result<Map<Station, Integer>> measurementCounts = report.measurementCountsByStation();
+        ClimateReport.Result<Map<Station, LocalDate>> firstDays = report.firstDayByStation();
+        ClimateReport.Result<Map<Integer, Double>> averageTemperatures = report.annualAverages(Quantity.TG);
+        ClimateReport.Result<Map<Integer, Double>> maxHourlyPrecipitation = report.annualMaxima(Quantity.RHX);
+        ClimateReport.Result<Map<Month, Double>> solarProfile = report.monthlyAverages(Quantity.SQ);
+        ClimateReport.Result<Integer> coldestYear = report.coldestYear();
+
+        ClimateTracker streamingTracker = new ClimateTracker();
+        streamingTracker.streamReport(ClimateTracker.class.getResource("/test").getPath(), report);
+
+        // the measurements have been aggregated, but not kept
+        assertEquals(climateTracker.getStations(), streamingTracker.getStations());
+        assertTrue(streamingTracker.getStations().stream().allMatch(station -> station.getMeasurements().isEmpty()));
+
+        assertEquals(climateTracker.numberOfMeasurementsByStation(), measurementCounts.get());
+        assertEquals(climateTracker.firstDayOfMeasurementByStation(), firstDays.get());
+        assertEquals(climateTracker.annualAverageTemperatureTrend(), averageTemperatures.get());
+        assertEquals(climateTracker.annualMaximumTrend(Quantity.RHX), maxHourlyPrecipitation.get());
+        assertEquals(climateTracker.allTimeAverageDailySolarByMonth(), solarProfile.get());
+        assertEquals(climateTracker.coldestYear(), coldestYear.get());
+    }
+
+    @Test void filteredScansFindTheSameDaysAndYearsAsFullScans() {
+        List<Measurement> all = climateTracker.getStations().stream()
+                .flatMap(station -> station.getMeasurements().stream())
+                .collect(Collectors.toList());
+        LocalDate start = LocalDate.of(1900, 1, 1), end = LocalDate.of(2100, 1, 1);
+
+        // years with frost, and years with a maximum temperature in a narrow band which requires months to be scanned
+        for (double[] bounds : new double[][] {{Double.NEGATIVE_INFINITY, -0.1}, {20.0, 20.4}, {40.0, 50.0}}) {
+            Set<Integer> expected = all.stream()
+                    .filter(m -> m.getMinTemperature() >= bounds[0] && m.getMinTemperature() <= bounds[1])
+                    .map(m -> m.getDate().getYear())
+                    .collect(Collectors.toCollection(TreeSet::new));
+            assertEquals(expected, climateTracker.yearsWithDaysWithin(Quantity.TN, bounds[0], bounds[1]));
+
+            Map<Station, Integer> expectedCounts = new HashMap<>();
+            climateTracker.getStations().forEach(station -> expectedCounts.put(station, (int) station.getMeasurements().stream()
+                    .filter(m -> m.getMinTemperature() >= bounds[0] && m.getMinTemperature() <= bounds[1]).count()));
+            assertEquals(expectedCounts, climateTracker.numberOfDaysWithinByStation(start, end, Quantity.TN, bounds[0], bounds[1]));
+        }
+        assertTrue(climateTracker.getScanStatistics().getBlocksPruned() > 0);
+    }
+
+    @Test void offHeapStorageGivesTheSameResultsAsTheHeap() {
+        for (ClimateTracker.StorageMode storageMode : new ClimateTracker.StorageMode[] {
+                ClimateTracker.StorageMode.OFF_HEAP, ClimateTracker.StorageMode.MAPPED}) {
+            ClimateTracker offHeapTracker = new ClimateTracker();
+            offHeapTracker.setStorageMode(storageMode);
+            offHeapTracker.importClimateDataFromVault(ClimateTracker.class.getResource("/test").getPath());
+            assertTrue(offHeapTracker.getOffHeapBytes() > 0);
+
+            assertEquals(climateTracker.numberOfMeasurementsByStation().toString(),
+                    offHeapTracker.numberOfMeasurementsByStation().toString());
+            assertEquals(climateTracker.annualAverageTemperatureTrend(), offHeapTracker.annualAverageTemperatureTrend());
+            assertEquals(climateTracker.yearsWithDaysWithin(Quantity.TN, 20.0, 20.4),
+                    offHeapTracker.yearsWithDaysWithin(Quantity.TN, 20.0, 20.4));
+            for (Station station : climateTracker.getStations()) {
+                Station offHeapStation = offHeapTracker.findStationById(station.getStn());
+                assertEquals(station.getMeasurements().stream().map(m -> m.getDate() + " " + m.getMaxTemperature()).collect(Collectors.toList()),
+                        offHeapStation.getMeasurements().stream().map(m -> m.getDate() + " " + m.getMaxTemperature()).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    @Test void rollingSeriesPoolTheValuesOfAllStations() {
+        List<Measurement> all = climateTracker.getStations().stream()
+                .flatMap(station -> station.getMeasurements().stream())
+                .collect(Collectors.toList());
+        LocalDate start = all.stream().map(Measurement::getDate).min(Comparator.naturalOrder()).orElseThrow();
+        LocalDate end = all.stream().map(Measurement::getDate).max(Comparator.naturalOrder()).orElseThrow().plusDays(3);
+
+        Map<LocalDate, Double> averages = climateTracker.rollingSeries(start, end, Quantity.TG, 30, RollingWindow.Statistic.AVERAGE);
+        Map<LocalDate, Double> maxima = climateTracker.rollingSeries(start, end, Quantity.TX, 30, RollingWindow.Statistic.MAX);
+        for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+            LocalDate first = day.minusDays(29), last = day;
+            List<Measurement> window = all.stream()
+                    .filter(m -> !m.getDate().isBefore(first) && !m.getDate().isAfter(last))
+                    .collect(Collectors.toList());
+            assertEquals(window.stream().mapToDouble(Measurement::getAverageTemperature).filter(t -> !Double.isNaN(t))
+                    .average().orElse(Double.NaN), averages.get(day), 1E-9);
+            assertEquals(window.stream().mapToDouble(Measurement::getMaxTemperature).filter(t -> !Double.isNaN(t))
+                    .max().orElse(Double.NaN), maxima.get(day));
+        }
+    }
+
+    @Test void percentilesAreMergedFromTheSketchesOfStationsAndYears() {
+        List<Measurement> all = climateTracker.getStations().stream()
+                .flatMap(station -> station.getMeasurements().stream())
+                .filter(m -> !Double.isNaN(m.getPrecipitation()))
+                .collect(Collectors.toList());
+
+        Map<Integer, List<Double>> periods = all.stream()
+                .collect(Collectors.groupingBy(m -> m.getDate().getYear() / 2 * 2, TreeMap::new,
+                        Collectors.mapping(Measurement::getPrecipitation, Collectors.toList())));
+        Map<Integer, Double> percentiles = climateTracker.percentileTrend(Quantity.RH, 0.9, 2);
+        assertEquals(periods.keySet(), percentiles.keySet());
+        periods.forEach((period, values) -> {
+            // the fraction must lie within the ranks of the estimate, up to the rank error
+            double estimate = percentiles.get(period);
+            assertTrue(values.stream().filter(v -> v < estimate).count() <= 0.93 * values.size());
+            assertTrue(values.stream().filter(v -> v <= estimate).count() >= 0.87 * values.size());
+        });
+
+        // any union of stations and years
+        List<Station> stations = List.of(climateTracker.findStationById(260), climateTracker.findStationById(380));
+        QuantileSketch sketch = climateTracker.quantileSketch(Quantity.RH, stations, 2019, 2020);
+        assertEquals(all.stream().filter(m -> stations.contains(m.getStation()) && m.getDate().getYear() <= 2020).count(),
+                sketch.getCount());
+        assertEquals(all.stream().filter(m -> stations.contains(m.getStation()))
+                .mapToDouble(Measurement::getPrecipitation).max().orElseThrow(), sketch.quantile(1.0));
+    }
+
+    @Test void monthlyTrendsAreReadFromTheRollups() {
+        Map<YearMonth, Double> expected = new TreeMap<>();
+        climateTracker.getStations().stream()
+                .flatMap(station -> station.getMeasurements().stream())
+                .filter(measurement -> !Double.isNaN(measurement.getMaxTemperature()))
+                .collect(Collectors.groupingBy(measurement -> YearMonth.from(measurement.getDate()),
+                        Collectors.averagingDouble(Measurement::getMaxTemperature)))
+                .forEach(expected::put);
+
+        Map<YearMonth, Double> monthlyTrend = climateTracker.monthlyAverageTrend(Quantity.TX);
+        assertEquals(expected.keySet(), monthlyTrend.keySet());
+        expected.forEach((month, average) -> assertEquals(average, monthlyTrend.get(month), 1E-9));
+    }
+
+    @Test void rollupsDoNotDependOnTheOrderOfImport(@TempDir Path vault) throws IOException {
+        Files.createDirectories(vault.resolve("measurements"));
+        Files.writeString(vault.resolve("stations.txt"), "260,De Bilt\n");
+        // the later year comes first, so the rollup has to extend towards earlier months
+        Files.writeString(vault.resolve("measurements/260.txt"), "# STN,YYYYMMDD\n" +
+                "  260,20210115,10,10,10,10,10,10,10,10,10,-12,-25,10,5,10,10,10,10,10,10,10,10,10\n" +
+                "  260,20190702,10,10,10,10,10,10,10,10,10,205,98,10,301,10,10,10,10,10,10,10,10,10\n");
+
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.importClimateDataFromVault(vault.toString());
+
+        assertEquals(Map.of(2019, 30.1, 2021, 0.5), tracker.annualMaximumTrend(Quantity.TX));
+        assertEquals(2021, tracker.coldestYear());
+        assertEquals(Map.of(YearMonth.of(2019, 7), 20.5, YearMonth.of(2021, 1), -1.2), tracker.monthlyAverageTrend(Quantity.TG));
+    }
+
+    @Test void vaultCacheReproducesTheImport(@TempDir Path cacheFolder) {
+        Path cacheFile = cacheFolder.resolve("vault.cache");
+        for (int run = 0; run < 2; run++) {
+            ClimateTracker cachedTracker = new ClimateTracker();
+            cachedTracker.setVaultCache(cacheFile);
+            cachedTracker.importClimateDataFromVault(ClimateTracker.class.getResource("/test").getPath());
+
+            assertTrue(Files.exists(cacheFile));
+            assertEquals(climateTracker.numberOfMeasurementsByStation(), cachedTracker.numberOfMeasurementsByStation());
+            assertEquals(climateTracker.numberOfValidValuesByStation(Measurement::getSolarHours),
+                    cachedTracker.numberOfValidValuesByStation(Measurement::getSolarHours));
+            assertEquals(climateTracker.annualAverageTemperatureTrend(), cachedTracker.annualAverageTemperatureTrend());
+            assertEquals(climateTracker.coldestYear(), cachedTracker.coldestYear());
+        }
+    }
+
+    @Test void vaultCacheParsesChangedFilesAgain(@TempDir Path vault) throws IOException {
+        Files.createDirectories(vault.resolve("measurements"));
+        Files.writeString(vault.resolve("stations.txt"), "260,De Bilt\n310,Vlissingen\n");
+        String header = "# STN,YYYYMMDD\n";
+        Path deBiltFile = vault.resolve("measurements/260.txt");
+        Files.writeString(deBiltFile, header +
+                "  260,20200101,10,10,10,10,10,10,10,10,10,23,-59,10,26,10,10,10,10,10,10,10,12,4\n");
+        Files.writeString(vault.resolve("measurements/310.txt"), header +
+                "  310,20200101,10,10,10,10,10,10,10,10,10,23,-59,10,26,10,10,10,10,10,10,10,7,4\n");
+        Path cacheFile = vault.resolve("vault.cache");
+
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.setVaultCache(cacheFile);
+        tracker.importClimateDataFromVault(vault.toString());
+        long cacheModified = Files.getLastModifiedTime(cacheFile).toMillis();
+
+        // an unchanged vault is taken from the cache as it is
+        tracker.importClimateDataFromVault(vault.toString());
+        assertEquals(cacheModified, Files.getLastModifiedTime(cacheFile).toMillis());
+        assertEquals(1.2, tracker.findStationById(260).totalPrecipitationBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 31)));
+
+        // a file with another size is parsed again
+        Files.writeString(deBiltFile,
+                "  260,20200102,10,10,10,10,10,10,10,10,10,23,-59,10,26,10,10,10,10,10,10,10,30,4\n", StandardOpenOption.APPEND);
+        tracker.importClimateDataFromVault(vault.toString());
+        assertEquals(2, tracker.findStationById(260).getMeasurements().size());
+        assertEquals(4.2, tracker.findStationById(260).totalPrecipitationBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 31)));
+        assertEquals(0.7, tracker.findStationById(310).totalPrecipitationBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 31)));
+
+        // a damaged cache is ignored and replaced
+        Files.write(cacheFile, new byte[] {1, 2, 3});
+        ClimateTracker otherTracker = new ClimateTracker();
+        otherTracker.setVaultCache(cacheFile);
+        otherTracker.importClimateDataFromVault(vault.toString());
+        assertEquals(tracker.numberOfMeasurementsByStation(), otherTracker.numberOfMeasurementsByStation());
+        assertTrue(Files.size(cacheFile) > 3);
+
+        // so is a cache with a valid header and huge counts of entries and days, without allocating them
+        ByteBuffer damaged = ByteBuffer.wrap(Files.readAllBytes(cacheFile));
+        damaged.putInt(8, Integer.MAX_VALUE);
+        int pathLength = damaged.getInt(12);
+        damaged.putInt(12 + 4 + pathLength + 3 * Long.BYTES + Integer.BYTES, Integer.MAX_VALUE);
+        Files.write(cacheFile, damaged.array());
+        ClimateTracker thirdTracker = new ClimateTracker();
+        thirdTracker.setVaultCache(cacheFile);
+        thirdTracker.importClimateDataFromVault(vault.toString());
+        assertEquals(tracker.numberOfMeasurementsByStation(), thirdTracker.numberOfMeasurementsByStation());
+    }
+
+    @Test void watcherAddsNewAndAppendedFiles(@TempDir Path vault) throws IOException, InterruptedException {
+        Files.createDirectories(vault.resolve("measurements"));
+        Files.writeString(vault.resolve("stations.txt"), "260,De Bilt\n310,Vlissingen\n");
+        String header = "# STN,YYYYMMDD\n";
+        Path deBiltFile = vault.resolve("measurements/260.txt");
+        Files.writeString(deBiltFile, header +
+                "  260,20200101,10,10,10,10,10,10,10,10,10,23,-59,10,26,10,10,10,10,10,10,10,12,4\n");
+
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.importClimateDataFromVault(vault.toString());
+
+        try (VaultWatcher watcher = tracker.watchVault(vault.toString())) {
+            // a day that is appended, the start of a day that is still being written and a new file
+            Files.writeString(deBiltFile,
+                    "  260,20200102,10,10,10,10,10,10,10,10,10,35,-10,10,41,10,10,10,10,10,10,10,30,4\n" +
+                    "  260,20200103,10,10,10,10,10,10", StandardOpenOption.APPEND);
+            Files.writeString(vault.resolve("measurements/310.txt"), header +
+                    "  310,20200101,10,10,10,10,10,10,10,10,10,23,-59,10,26,10,10,10,10,10,10,10,7,4\n");
+            assertEquals(2, pollUntil(watcher, 2));
+
+            assertEquals(2, tracker.findStationById(260).getMeasurements().size());
+            assertEquals(1, tracker.findStationById(310).getMeasurements().size());
+            assertEquals(4.2, tracker.findStationById(260).totalPrecipitationBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 31)));
+            assertEquals(Map.of(2020, 4.1), tracker.annualMaximumTrend(Quantity.TX));
+            assertEquals(LocalDate.of(2020, 1, 2),
+                    tracker.maxBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 31), Quantity.TX).get().getDate());
+
+            // the rest of the line completes the day
+            Files.writeString(deBiltFile, ",10,10,10,-5,-80,10,-2,10,10,10,10,10,10,10,0,0\n", StandardOpenOption.APPEND);
+            assertEquals(1, pollUntil(watcher, 1));
+            assertEquals(3, tracker.findStationById(260).getMeasurements().size());
+            assertEquals(-8.0, tracker.findStationById(260).minBetween(
+                    LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 31), Quantity.TN).get().getMinTemperature());
+
+            // a new file of which the header is written in pieces is only read once the header line is complete
+            Path vlissingenFile = vault.resolve("measurements/310-2020.txt");
+            Files.writeString(vlissingenFile, "SOURCE: KNMI\n# ST");
+            assertEquals(0, watcher.poll(500, TimeUnit.MILLISECONDS));
+            Files.writeString(vlissingenFile, "N,YYYYMMDD\n" +
+                    "  310,20200102,10,10,10,10,10,10,10,10,10,23,-59,10,26,10,10,10,10,10,10,10,7,4\n", StandardOpenOption.APPEND);
+            assertEquals(1, pollUntil(watcher, 1));
+            assertEquals(2, tracker.findStationById(310).getMeasurements().size());
+
+            assertEquals(tracker.numberOfMeasurementsByStation(), reimport(vault).numberOfMeasurementsByStation());
+            assertEquals(tracker.coldestYear(), reimport(vault).coldestYear());
+        }
+    }
+
+    // polls the watcher until the expected number of days has been added, or a few seconds have passed
+    private static int pollUntil(VaultWatcher watcher, int expected) throws InterruptedException {
+        int numAdded = 0;
+        for (int attempt = 0; attempt < 20 && numAdded < expected; attempt++) {
+            numAdded += watcher.poll(500, TimeUnit.MILLISECONDS);
+        }
+        return numAdded;
+    }
+
+    private static ClimateTracker reimport(Path vault) {
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.importClimateDataFromVault(vault.toString());
+        return tracker;
+    }
 }
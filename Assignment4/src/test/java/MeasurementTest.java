@@ -3,6 +3,8 @@ import models.Station;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -41,6 +43,37 @@ public class MeasurementTest {
                 0.0, 0.0);
     }
 
+    @Test
+    public void datesAreResolvedInsideAndOutsideOfTheCalendarTables() {
+        // check the edges of the tables, a leap day and dates that are resolved through LocalDate
+        for (LocalDate date : new LocalDate[]{LocalDate.of(1849, 12, 31), LocalDate.of(1850, 1, 1),
+                LocalDate.of(1900, 2, 28), LocalDate.of(2000, 2, 29), LocalDate.of(2024, 12, 31),
+                LocalDate.of(2149, 12, 31), LocalDate.of(2150, 1, 1)}) {
+            int dateNumber = date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+            assertEquals(date, new Measurement(deBilt, dateNumber).getDate(), "Wrong date of " + dateNumber);
+        }
+        assertThrows(DateTimeException.class, () -> new Measurement(deBilt, 19000229));
+        assertThrows(DateTimeException.class, () -> new Measurement(deBilt, 20230431));
+    }
+
+    @Test
+    public void incompleteOrUnresolvableLinesAreNotConverted() {
+        assertNull(Measurement.fromLine("  380,19060204,   95,   36,   36,   77", stations));
+        assertNull(Measurement.fromLine("", stations));
+        assertNull(Measurement.fromLine("  999,19750914,  204,   87,   87,  123,   14,   51,   20,  185,   14,  141,  113,   24,  176,   14,  100,     ,   14,   11,  944,    5,    6,    6,     ", stations));
+        assertNull(Measurement.fromLine("  STN,YYYYMMDD,  204,   87,   87,  123,   14,   51,   20,  185,   14,  141,  113,   24,  176,   14,  100,     ,   14,   11,  944,    5,    6,    6,     ", stations));
+    }
+
+    @Test
+    public void corruptValuesAreConvertedToNaN() {
+        Measurement measurement = Measurement.fromLine("  260,19750914,  204,   87,   87,  1x3,   14,   51,   20,  1 5,   14,  141,  113,   24,  1.6,   14,  100,     ,   14,   11,  944,    5,    6,    6,     ", stations);
+        checkMeasurement(measurement, deBilt, 1975, 9, 14,
+                8.7, Double.NaN,
+                14.1, 11.3, Double.NaN,
+                1.4,
+                0.6, 0.6);
+    }
+
     private void checkMeasurement(Measurement measurement,
                                   Station station, int year, int month, int day,
                                   double fg, double fxx,
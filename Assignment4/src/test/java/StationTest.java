@@ -1,6 +1,15 @@
+import models.Measurement;
+import models.QuantileSketch;
+import models.Quantity;
+import models.RollingWindow;
 import models.Station;
 import org.junit.jupiter.api.*;
 
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class StationTest {
@@ -48,4 +57,312 @@ public class StationTest {
         double allTimeMaxTemp = this.deBilt.allTimeMaxTemperature();
         assertTrue(Double.isNaN(allTimeMaxTemp), "An empty station should return NaN on allTimeMaxTemperature");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void measurementsAreKeptInDateOrderAndDuplicateDatesAreIgnored() {
+        Measurement later = new Measurement(deBilt, 20200105);
+        later.setMaxTemperature(12.3);
+        Measurement earlier = new Measurement(deBilt, 20191230);
+        earlier.setMaxTemperature(4.5);
+        Measurement duplicate = new Measurement(deBilt, 20200105);
+        duplicate.setMaxTemperature(30.0);
+
+        assertEquals(2, deBilt.addMeasurements(List.of(later, earlier, duplicate)));
+        assertEquals(0, vlissingen.addMeasurements(List.of(later)), "Measurements of another station are ignored");
+
+        assertEquals(2, deBilt.getMeasurements().size());
+        Measurement[] stored = deBilt.getMeasurements().toArray(new Measurement[0]);
+        assertEquals(earlier.getDate(), stored[0].getDate());
+        assertEquals(later.getDate(), stored[1].getDate());
+        assertEquals(12.3, stored[1].getMaxTemperature(), "The first measurement of a date is kept");
+        assertEquals(12.3, deBilt.allTimeMaxTemperature());
+        assertEquals(earlier.getDate(), deBilt.firstDayOfMeasurement().get());
+    }
+
+    @Test
+    public void precipitationIsAccumulatedExactly() {
+        List<Measurement> days = new ArrayList<>();
+        for (int day = 1; day <= 10; day++) {
+            Measurement measurement = new Measurement(deBilt, 20200100 + day);
+            measurement.setPrecipitation(0.1);
+            days.add(measurement);
+        }
+        deBilt.addMeasurements(days);
+
+        assertEquals(1.0, deBilt.totalPrecipitationBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 10)),
+                "ten times 0.1 mm should add up to exactly 1.0 mm");
+        assertEquals(0.1, deBilt.getMeasurements().iterator().next().getPrecipitation());
+    }
+
+    @Test
+    public void valuesOutOfTheRangeOfTheStorageAreRejected() {
+        Measurement measurement = new Measurement(deBilt, 20200101);
+        measurement.setPrecipitation(5000.0);
+
+        assertThrows(IllegalArgumentException.class, () -> deBilt.addMeasurements(List.of(measurement)));
+        assertEquals(0, deBilt.getMeasurements().size());
+    }
+
+    @Test
+    public void rangeTotalsCountsAndAveragesFollowLaterAdditions() {
+        Measurement jan2 = new Measurement(deBilt, 20200102);
+        jan2.setAverageTemperature(4.0);
+        Measurement jan5 = new Measurement(deBilt, 20200105);
+        jan5.setAverageTemperature(Double.NaN);
+        deBilt.addMeasurements(List.of(jan2, jan5));
+
+        LocalDate start = LocalDate.of(2020, 1, 1), end = LocalDate.of(2020, 1, 31);
+        assertEquals(1, deBilt.numValidValuesBetween(start, end, Quantity.TG));
+        assertEquals(4.0, deBilt.averageBetween(start, end, Quantity.TG));
+
+        // a day before and a day in between the earlier ones invalidate the index
+        Measurement jan1 = new Measurement(deBilt, 20200101);
+        jan1.setAverageTemperature(-1.5);
+        Measurement jan3 = new Measurement(deBilt, 20200103);
+        jan3.setAverageTemperature(2.0);
+        deBilt.addMeasurements(List.of(jan3, jan1));
+
+        assertEquals(3, deBilt.numValidValuesBetween(start, end, Quantity.TG));
+        assertEquals(4.5, deBilt.totalBetween(start, end, Quantity.TG));
+        assertEquals(1.5, deBilt.averageBetween(start, end, Quantity.TG));
+        assertEquals(6.0, deBilt.totalBetween(LocalDate.of(2020, 1, 2), LocalDate.of(2020, 1, 3), Quantity.TG));
+        assertEquals(deBilt.averageBetween(start, end, Measurement::getAverageTemperature),
+                deBilt.averageBetween(start, end, Quantity.TG));
+        assertTrue(Double.isNaN(deBilt.averageBetween(LocalDate.of(2019, 1, 1), LocalDate.of(2019, 12, 31), Quantity.TG)));
+        assertEquals(LocalDate.of(2020, 1, 5), deBilt.lastDayOfMeasurement().get());
+    }
+
+    @Test
+    public void rangeExtremesReturnTheEarliestDayOfTheExtremeValue() {
+        List<Measurement> days = new ArrayList<>();
+        double[] temperatures = {3.0, 7.5, Double.NaN, -2.0, 7.5, 1.0};
+        for (int day = 0; day < temperatures.length; day++) {
+            Measurement measurement = new Measurement(deBilt, 20200101 + day);
+            measurement.setMaxTemperature(temperatures[day]);
+            days.add(measurement);
+        }
+        deBilt.addMeasurements(days);
+
+        LocalDate start = LocalDate.of(2020, 1, 1), end = LocalDate.of(2020, 1, 31);
+        assertEquals(LocalDate.of(2020, 1, 2), deBilt.maxBetween(start, end, Quantity.TX).get().getDate());
+        assertEquals(LocalDate.of(2020, 1, 4), deBilt.minBetween(start, end, Quantity.TX).get().getDate());
+        assertEquals(LocalDate.of(2020, 1, 5),
+                deBilt.maxBetween(LocalDate.of(2020, 1, 3), end, Quantity.TX).get().getDate());
+        assertTrue(deBilt.maxBetween(LocalDate.of(2020, 1, 3), LocalDate.of(2020, 1, 3), Quantity.TX).isEmpty());
+        assertEquals(7.5, deBilt.allTimeMaxTemperature());
+    }
+
+    @Test
+    public void customMappersAndQuantitiesGiveTheSameResults() {
+        List<Measurement> days = new ArrayList<>();
+        double[][] temperatures = {{3.0, -1.0}, {7.5, 2.5}, {Double.NaN, 1.0}, {4.0, Double.NaN}};
+        for (int day = 0; day < temperatures.length; day++) {
+            Measurement measurement = new Measurement(deBilt, 20200101 + day);
+            measurement.setMaxTemperature(temperatures[day][0]);
+            measurement.setMinTemperature(temperatures[day][1]);
+            days.add(measurement);
+        }
+        deBilt.addMeasurements(days);
+        LocalDate start = LocalDate.of(2020, 1, 1), end = LocalDate.of(2020, 1, 31);
+
+        ToDoubleFunction<Measurement> dailyRange = measurement -> measurement.getMaxTemperature() - measurement.getMinTemperature();
+        assertEquals(2, deBilt.numValidValues(dailyRange));
+        assertEquals(4.5, deBilt.averageBetween(start, end, dailyRange));
+
+        ToDoubleFunction<Measurement> maxTemperature = Quantity.TX;
+        assertEquals(3, deBilt.numValidValues(maxTemperature));
+        assertEquals(deBilt.numValidValues(Measurement::getMaxTemperature), deBilt.numValidValues(maxTemperature));
+        assertEquals(deBilt.averageBetween(start, end, Measurement::getMaxTemperature),
+                deBilt.averageBetween(start, end, maxTemperature));
+    }
+
+    @Test
+    public void rangeQueriesOnPackedBlocksMatchFullScans() {
+        Random random = new Random(42);
+        List<Measurement> days = addYearsOfDays(deBilt, random);
+
+        for (int period = 0; period < 50; period++) {
+            LocalDate start = LocalDate.of(1999, 12, 1).plusDays(random.nextInt(4100));
+            LocalDate end = start.plusDays(random.nextInt(period < 25 ? 60 : 3000));
+            List<Measurement> inPeriod = days.stream()
+                    .filter(m -> !m.getDate().isBefore(start) && !m.getDate().isAfter(end))
+                    .collect(Collectors.toList());
+            List<Measurement> valid = inPeriod.stream()
+                    .filter(m -> !Double.isNaN(m.getMaxTemperature()))
+                    .collect(Collectors.toList());
+
+            assertEquals(valid.size(), deBilt.numValidValuesBetween(start, end, Quantity.TX));
+            assertEquals(inPeriod.stream().mapToDouble(Measurement::getPrecipitation).sum(),
+                    deBilt.totalBetween(start, end, Quantity.RH), 1E-6);
+            assertEquals(valid.stream().mapToDouble(Measurement::getMaxTemperature).average().orElse(Double.NaN),
+                    deBilt.averageBetween(start, end, Quantity.TX), 1E-9);
+            // the earliest day with the extreme value
+            assertEquals(valid.stream().min(Comparator.comparingDouble(Measurement::getMaxTemperature)).map(Measurement::getDate),
+                    deBilt.minBetween(start, end, Quantity.TX).map(Measurement::getDate));
+            assertEquals(valid.stream().max(Comparator.comparingDouble(Measurement::getMaxTemperature)
+                            .thenComparing(Measurement::getDate, Comparator.reverseOrder())).map(Measurement::getDate),
+                    deBilt.maxBetween(start, end, Quantity.TX).map(Measurement::getDate));
+        }
+    }
+
+    @Test
+    public void rangeQueriesFollowDaysAddedToPackedBlocks() {
+        Random random = new Random(11);
+        List<Measurement> days = new ArrayList<>();
+        for (LocalDate date = LocalDate.of(2000, 1, 1); date.isBefore(LocalDate.of(2008, 1, 1)); date = date.plusDays(1)) {
+            Measurement measurement = new Measurement(deBilt, date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth());
+            measurement.setMaxTemperature(random.nextInt(400) / 10.0 - 5.0);
+            days.add(measurement);
+        }
+        Collections.shuffle(days, random);
+        LocalDate start = LocalDate.of(2000, 2, 10), end = LocalDate.of(2007, 10, 20);
+
+        // every batch reopens blocks that have been packed and queried before
+        List<Measurement> added = new ArrayList<>();
+        for (int from = 0; from < days.size(); from += 500) {
+            List<Measurement> batch = days.subList(from, Math.min(days.size(), from + 500));
+            deBilt.addMeasurements(batch);
+            added.addAll(batch);
+            List<Measurement> inPeriod = added.stream()
+                    .filter(m -> !m.getDate().isBefore(start) && !m.getDate().isAfter(end))
+                    .collect(Collectors.toList());
+
+            assertEquals(inPeriod.size(), deBilt.numValidValuesBetween(start, end, Quantity.TX));
+            assertEquals(inPeriod.stream().mapToDouble(Measurement::getMaxTemperature).sum(),
+                    deBilt.totalBetween(start, end, Quantity.TX), 1E-6);
+            assertEquals(inPeriod.stream().mapToDouble(Measurement::getMaxTemperature).max().orElse(Double.NaN),
+                    deBilt.maxBetween(start, end, Quantity.TX).map(Measurement::getMaxTemperature).orElse(Double.NaN));
+            assertEquals(inPeriod.stream().mapToDouble(Measurement::getMaxTemperature).min().orElse(Double.NaN),
+                    deBilt.minBetween(start, end, Quantity.TX).map(Measurement::getMaxTemperature).orElse(Double.NaN));
+        }
+    }
+
+    @Test
+    public void filteredScansMatchFullScansAndSkipBlocks() {
+        Random random = new Random(7);
+        List<Measurement> days = addYearsOfDays(deBilt, random);
+        LocalDate start = LocalDate.of(2000, 3, 15), end = LocalDate.of(2010, 6, 30);
+        double maximum = days.stream().mapToDouble(Measurement::getMaxTemperature).filter(t -> !Double.isNaN(t)).max().orElseThrow();
+
+        for (double[] bounds : new double[][] {{15.0, 20.0}, {-0.05, 0.05}, {maximum - 3.0, Double.POSITIVE_INFINITY},
+                {Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY}, {maximum + 0.1, Double.POSITIVE_INFINITY}, {5.0, 4.0}}) {
+            List<LocalDate> expected = days.stream()
+                    .filter(m -> !m.getDate().isBefore(start) && !m.getDate().isAfter(end))
+                    .filter(m -> m.getMaxTemperature() >= bounds[0] && m.getMaxTemperature() <= bounds[1])
+                    .map(Measurement::getDate)
+                    .collect(Collectors.toList());
+
+            assertEquals(expected.size(), deBilt.numDaysWithin(start, end, Quantity.TX, bounds[0], bounds[1]));
+            assertEquals(expected, deBilt.measurementsWithin(start, end, Quantity.TX, bounds[0], bounds[1]).stream()
+                    .map(Measurement::getDate).collect(Collectors.toList()));
+        }
+
+        // a bound above the maximum of the station is answered by the month summaries alone
+        long visited = deBilt.getScanStatistics().getBlocksVisited();
+        long pruned = deBilt.getScanStatistics().getBlocksPruned();
+        assertEquals(0, deBilt.numDaysWithin(start, end, Quantity.TX, maximum + 0.1, Double.POSITIVE_INFINITY));
+        assertTrue(deBilt.getScanStatistics().getBlocksVisited() > visited);
+        assertEquals(deBilt.getScanStatistics().getBlocksVisited() - visited, deBilt.getScanStatistics().getBlocksPruned() - pruned);
+
+        // every month of the period is visited once, and unbounded scans decode none of them
+        visited = deBilt.getScanStatistics().getBlocksVisited();
+        long decoded = deBilt.getScanStatistics().getBlocksDecoded();
+        assertEquals(days.stream().filter(m -> !m.getDate().isBefore(start) && !m.getDate().isAfter(end)
+                        && !Double.isNaN(m.getMaxTemperature())).count(),
+                deBilt.numDaysWithin(start, end, Quantity.TX, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY));
+        assertEquals(124, deBilt.getScanStatistics().getBlocksVisited() - visited);
+        assertEquals(decoded, deBilt.getScanStatistics().getBlocksDecoded());
+    }
+
+    @Test
+    public void rollingSeriesMatchTheStatisticsOfEveryWindow() {
+        Random random = new Random(11);
+        addYearsOfDays(deBilt, random);
+        // the windows at the start and the end of the period reach beyond the days of the station
+        LocalDate start = LocalDate.of(1999, 12, 20), end = LocalDate.of(2010, 11, 10);
+
+        for (int windowDays : new int[] {1, 7, 30, 365}) {
+            Map<LocalDate, Double> averages = deBilt.rollingSeries(start, end, Quantity.TX, windowDays, RollingWindow.Statistic.AVERAGE);
+            Map<LocalDate, Double> sums = deBilt.rollingSeries(start, end, Quantity.RH, windowDays, RollingWindow.Statistic.SUM);
+            Map<LocalDate, Double> minima = deBilt.rollingSeries(start, end, Quantity.TX, windowDays, RollingWindow.Statistic.MIN);
+            Map<LocalDate, Double> maxima = deBilt.rollingSeries(start, end, Quantity.TX, windowDays, RollingWindow.Statistic.MAX);
+            assertEquals(start.datesUntil(end.plusDays(1)).collect(Collectors.toList()), new ArrayList<>(averages.keySet()));
+
+            for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+                LocalDate first = day.minusDays(windowDays - 1);
+                assertEquals(deBilt.averageBetween(first, day, Quantity.TX), averages.get(day), 1E-9);
+                if (deBilt.numValidValuesBetween(first, day, Quantity.RH) > 0) {
+                    assertEquals(deBilt.totalBetween(first, day, Quantity.RH), sums.get(day), 1E-9);
+                } else {
+                    assertTrue(sums.get(day).isNaN());
+                }
+                assertEquals(deBilt.minBetween(first, day, Quantity.TX).map(Measurement::getMaxTemperature).orElse(Double.NaN), minima.get(day));
+                assertEquals(deBilt.maxBetween(first, day, Quantity.TX).map(Measurement::getMaxTemperature).orElse(Double.NaN), maxima.get(day));
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> deBilt.rollingSeries(start, end, Quantity.TX, 0, RollingWindow.Statistic.AVERAGE));
+    }
+
+    @Test
+    public void quantileSketchesEstimatePercentilesWithinTheirRankError() {
+        Random random = new Random(13);
+        List<Measurement> days = addYearsOfDays(deBilt, random);
+
+        for (int[] years : new int[][] {{2003, 2003}, {2000, 2010}, {2004, 2007}}) {
+            double[] values = days.stream()
+                    .filter(m -> m.getDate().getYear() >= years[0] && m.getDate().getYear() <= years[1])
+                    .mapToDouble(Measurement::getMaxTemperature)
+                    .filter(t -> !Double.isNaN(t))
+                    .sorted().toArray();
+            QuantileSketch sketch = deBilt.quantileSketch(Quantity.TX, years[0], years[1]);
+            assertEquals(values.length, sketch.getCount());
+            assertTrue(sketch.getNumRetained() <= 3 * 128 + 64);
+
+            assertEquals(values[0], sketch.quantile(0.0));
+            assertEquals(values[values.length - 1], sketch.quantile(1.0));
+            for (double fraction : new double[] {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99}) {
+                // the fraction must lie within the ranks of the estimate, up to the rank error
+                double estimate = sketch.quantile(fraction);
+                long below = Arrays.stream(values).filter(v -> v < estimate).count();
+                long atOrBelow = Arrays.stream(values).filter(v -> v <= estimate).count();
+                assertTrue(below <= (fraction + 0.03) * values.length && atOrBelow >= (fraction - 0.03) * values.length,
+                        () -> String.format("%.2f quantile of %s: %.1f", fraction, Arrays.toString(years), estimate));
+            }
+        }
+
+        // no values, nothing to estimate
+        assertEquals(0, deBilt.quantileSketch(Quantity.TX, 1990, 1995).getCount());
+        assertTrue(Double.isNaN(deBilt.quantileSketch(Quantity.TX, 1990, 1995).quantile(0.5)));
+        assertThrows(IllegalArgumentException.class, () -> deBilt.quantileSketch(Quantity.TX, 2000, 2010).quantile(1.5));
+    }
+
+    /**
+     * adds almost eleven years of slowly changing temperatures with gaps to a station in shuffled batches,
+     * so later batches are added before and into blocks that have been packed already
+     *
+     * @return the days that have been added, in order of their date
+     */
+    private static List<Measurement> addYearsOfDays(Station station, Random random) {
+        List<Measurement> days = new ArrayList<>();
+        double temperature = 10.0;
+        for (LocalDate date = LocalDate.of(2000, 1, 1); date.isBefore(LocalDate.of(2010, 11, 1)); date = date.plusDays(1)) {
+            if (random.nextInt(20) == 0) continue;
+            temperature = Math.round((temperature + random.nextGaussian()) * 10) / 10.0;
+            Measurement measurement = new Measurement(station, date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth());
+            measurement.setMaxTemperature(random.nextInt(10) == 0 ? Double.NaN : temperature);
+            measurement.setPrecipitation(random.nextInt(3) == 0 ? random.nextInt(300) / 10.0 : 0.0);
+            days.add(measurement);
+        }
+        Collections.shuffle(days, random);
+        for (int from = 0; from < days.size(); from += 1000) {
+            station.addMeasurements(days.subList(from, Math.min(days.size(), from + 1000)));
+        }
+        days.sort(Comparator.comparing(Measurement::getDate));
+        assertEquals(days.stream().map(Measurement::getDate).collect(Collectors.toList()),
+                station.getMeasurements().stream().map(Measurement::getDate).collect(Collectors.toList()));
+        assertEquals(days.stream().map(Measurement::getMaxTemperature).collect(Collectors.toList()),
+                station.getMeasurements().stream().map(Measurement::getMaxTemperature).collect(Collectors.toList()));
+        return days;
+    }
+}
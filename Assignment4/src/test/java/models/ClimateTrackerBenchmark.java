@@ -0,0 +1,202 @@
+package models;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the import and the reporting paths of ClimateTracker on the test vault
+ * These benchmarks are part of the regression gate: mvn -P benchmark verify
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClimateTrackerBenchmark {
+    private final String vaultPath = ClimateTracker.class.getResource("/test").getPath();
+    private ClimateTracker climateTracker;
+    private ClimateTracker offHeapTracker;
+    private Path vaultCache;
+
+    @Setup
+    public void setup() throws IOException {
+        climateTracker = new ClimateTracker();
+        climateTracker.importClimateDataFromVault(vaultPath);
+
+        offHeapTracker = new ClimateTracker();
+        offHeapTracker.setStorageMode(ClimateTracker.StorageMode.OFF_HEAP);
+        offHeapTracker.importClimateDataFromVault(vaultPath);
+
+        vaultCache = Files.createTempFile("vault", ".cache");
+        ClimateTracker cachingTracker = new ClimateTracker();
+        cachingTracker.setVaultCache(vaultCache);
+        cachingTracker.importClimateDataFromVault(vaultPath);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(vaultCache);
+    }
+
+    @Benchmark
+    public ClimateTracker importClimateDataFromVault() {
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.importClimateDataFromVault(vaultPath);
+        return tracker;
+    }
+
+    @Benchmark
+    public ClimateTracker importClimateDataFromVaultInParallel() {
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.setImportMode(ClimateTracker.ImportMode.PARALLEL);
+        tracker.importClimateDataFromVault(vaultPath);
+        return tracker;
+    }
+
+    @Benchmark
+    public ClimateTracker importClimateDataFromVaultPipelined() {
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.setImportMode(ClimateTracker.ImportMode.PIPELINED);
+        tracker.importClimateDataFromVault(vaultPath);
+        return tracker;
+    }
+
+    @Benchmark
+    public ClimateTracker importClimateDataFromVaultCache() {
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.setVaultCache(vaultCache);
+        tracker.importClimateDataFromVault(vaultPath);
+        return tracker;
+    }
+
+    @Benchmark
+    public Map<Integer, Double> annualAverageTemperatureTrend() {
+        return climateTracker.annualAverageTemperatureTrend();
+    }
+
+    @Benchmark
+    public Map<Integer, Double> annualMaximumTrend() {
+        return climateTracker.annualMaximumTrend(Measurement::getMaxTemperature);
+    }
+
+    @Benchmark
+    public Map<Integer, Double> annualMaximumTrendFromRangeIndex() {
+        return climateTracker.annualMaximumTrend(Quantity.TX);
+    }
+
+    @Benchmark
+    public Map<LocalDate, Double> rollingAverage() {
+        return climateTracker.findStationById(260).rollingSeries(LocalDate.of(2019, 1, 1), LocalDate.of(2020, 10, 31),
+                Quantity.TG, 30, RollingWindow.Statistic.AVERAGE);
+    }
+
+    @Benchmark
+    public Map<LocalDate, Double> rollingAverageByWindow() {
+        // the same series with a query for every position of the window
+        Station station = climateTracker.findStationById(260);
+        Map<LocalDate, Double> series = new LinkedHashMap<>();
+        for (LocalDate day = LocalDate.of(2019, 1, 1); !day.isAfter(LocalDate.of(2020, 10, 31)); day = day.plusDays(1)) {
+            series.put(day, station.averageBetween(day.minusDays(29), day, Quantity.TG));
+        }
+        return series;
+    }
+
+    @Benchmark
+    public Map<Integer, Double> percentileTrend() {
+        return climateTracker.percentileTrend(Quantity.RH, 0.99, 10);
+    }
+
+    @Benchmark
+    public Map<Integer, Double> percentileTrendBySorting() {
+        // the same percentiles from all raw values of every decade
+        Map<Integer, List<Double>> decades = new TreeMap<>();
+        for (Station station : climateTracker.getStations()) {
+            for (Measurement measurement : station.getMeasurements()) {
+                if (!Double.isNaN(measurement.getPrecipitation())) {
+                    decades.computeIfAbsent(measurement.getDate().getYear() / 10 * 10, decade -> new ArrayList<>())
+                            .add(measurement.getPrecipitation());
+                }
+            }
+        }
+        Map<Integer, Double> percentiles = new TreeMap<>();
+        decades.forEach((decade, values) -> {
+            Collections.sort(values);
+            percentiles.put(decade, values.get((int) Math.ceil(0.99 * values.size()) - 1));
+        });
+        return percentiles;
+    }
+
+    @Benchmark
+    public int coldestYear() {
+        return climateTracker.coldestYear();
+    }
+
+    @Benchmark
+    public Object[] reportByIndividualMethods() {
+        return new Object[] {
+                climateTracker.numberOfMeasurementsByStation(),
+                climateTracker.firstDayOfMeasurementByStation(),
+                climateTracker.numberOfValidValuesByStation(Measurement::getPrecipitation),
+                climateTracker.annualAverageTemperatureTrend(),
+                climateTracker.annualMaximumTrend(Measurement::getMaxHourlyPrecipitation),
+                climateTracker.annualMaximumTrend(Measurement::getMaxWindGust),
+                climateTracker.allTimeAverageDailySolarByMonth(),
+                climateTracker.coldestYear()
+        };
+    }
+
+    @Benchmark
+    public ClimateReport reportInSinglePass() {
+        ClimateReport report = new ClimateReport();
+        report.measurementCountsByStation();
+        report.firstDayByStation();
+        report.validValueCountsByStation(Quantity.RH);
+        report.annualAverages(Quantity.TG);
+        report.annualMaxima(Quantity.RHX);
+        report.annualMaxima(Quantity.FXX);
+        report.monthlyAverages(Quantity.SQ);
+        report.coldestYear();
+        return climateTracker.runReport(report);
+    }
+
+    @Benchmark
+    public ClimateReport importReportOffHeap() {
+        return offHeapTracker.runReport(newImportReport());
+    }
+
+    @Benchmark
+    public ClimateTracker importClimateDataFromVaultOffHeap() {
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.setStorageMode(ClimateTracker.StorageMode.OFF_HEAP);
+        tracker.importClimateDataFromVault(vaultPath);
+        return tracker;
+    }
+
+    @Benchmark
+    public ClimateReport importAndReport() {
+        ClimateTracker tracker = new ClimateTracker();
+        tracker.importClimateDataFromVault(vaultPath);
+        return tracker.runReport(newImportReport());
+    }
+
+    @Benchmark
+    public ClimateReport streamReport() {
+        return new ClimateTracker().streamReport(vaultPath, newImportReport());
+    }
+
+    private static ClimateReport newImportReport() {
+        ClimateReport report = new ClimateReport();
+        report.measurementCountsByStation();
+        report.annualAverages(Quantity.TG);
+        report.monthlyAverages(Quantity.SQ);
+        report.coldestYear();
+        return report;
+    }
+}
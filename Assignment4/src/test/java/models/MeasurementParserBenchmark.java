@@ -0,0 +1,92 @@
+package models;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the conversion of KNMI text lines by MeasurementParser against the former
+ * split/trim/parseDouble implementation of Measurement.fromLine
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeasurementParserBenchmark {
+    private List<String> lines;
+    private byte[][] lineBytes;
+    private Map<Integer, Station> stations;
+    private final MeasurementParser parser = new MeasurementParser();
+
+    @Setup
+    public void setup() throws IOException {
+        Path file = Path.of(ClimateTracker.class.getResource("/test/measurements/test_260_DeBilt.txt").getPath());
+        lines = Files.readAllLines(file).stream()
+                .filter(line -> line.startsWith("  260"))
+                .collect(Collectors.toList());
+        lineBytes = lines.stream().map(line -> line.getBytes(StandardCharsets.US_ASCII)).toArray(byte[][]::new);
+        stations = Map.of(260, new Station(260, "De Bilt"));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(609)
+    public double splitAndParseDouble() {
+        double sum = 0;
+        for (String line : lines) {
+            sum += legacyFromLine(line, stations).getMaxTemperature();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(609)
+    public double fromLine() {
+        double sum = 0;
+        for (String line : lines) {
+            sum += Measurement.fromLine(line, stations).getMaxTemperature();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(609)
+    public long parseBytes() {
+        long sum = 0;
+        for (byte[] line : lineBytes) {
+            parser.parse(line, 0, line.length);
+            sum += parser.getRawValue(MeasurementParser.TX);
+        }
+        return sum;
+    }
+
+    // the former implementation of Measurement.fromLine, as reference
+    private static Measurement legacyFromLine(String textLine, Map<Integer, Station> stations) {
+        String[] fields = textLine.split(",");
+        if (fields.length < 24) return null;
+        Measurement measurement = new Measurement(stations.get(Integer.parseInt(fields[0].trim())),
+                Integer.parseInt(fields[1].trim()));
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].trim();
+            if (fields[i].equals("-1"))
+                fields[i] = "0.0";
+        }
+        measurement.setAverageWindSpeed(fields[4].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[4].trim()) * 0.1);
+        measurement.setMaxWindGust(fields[9].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[9].trim()) * 0.1);
+        measurement.setAverageTemperature(fields[11].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[11].trim()) * 0.1);
+        measurement.setMinTemperature(fields[12].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[12].trim()) * 0.1);
+        measurement.setMaxTemperature(fields[14].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[14].trim()) * 0.1);
+        measurement.setSolarHours(fields[18].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[18].trim()) * 0.1);
+        measurement.setPrecipitation(fields[22].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[22].trim()) * 0.1);
+        measurement.setMaxHourlyPrecipitation(fields[23].trim().isEmpty() ? Double.NaN : Double.parseDouble(fields[23].trim()) * 0.1);
+        return measurement;
+    }
+}
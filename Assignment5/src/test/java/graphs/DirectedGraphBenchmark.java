@@ -0,0 +1,37 @@
+package graphs;
+
+import org.openjdk.jmh.annotations.*;
+import route_planner.Road;
+import route_planner.RoadMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the path searches of DirectedGraph on the complete road map of the Netherlands
+ * These benchmarks are part of the regression gate: mvn -P benchmark verify
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DirectedGraphBenchmark {
+    private RoadMap roadMap;
+
+    @Setup
+    public void setup() {
+        RoadMap.reSeedRandomizer(20211220L);
+        roadMap = new RoadMap("Junctions.csv", "Roads.csv");
+    }
+
+    @Benchmark
+    public DirectedGraph<?, ?>.DGPath dijkstraShortestPath() {
+        return roadMap.dijkstraShortestPath("Amsterdam", "Meppel", Road::getLength);
+    }
+
+    @Benchmark
+    public DirectedGraph<?, ?>.DGPath breadthFirstSearch() {
+        return roadMap.breadthFirstSearch("Amsterdam", "Meppel");
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Compares a fresh JMH result file (-rf json) against a baseline result file that is kept in the repository,
+ * and fails when any benchmark of the baseline has regressed beyond a threshold.
+ * This is shared by the benchmark profile of all assignment modules and runs as a single source file program:
+ *
+ *   java BenchmarkGate.java baseline.json result.json [threshold-percent] [--include=regex] [--record]
+ *
+ * A benchmark only counts as regressed when the confidence intervals that JMH reports (99.9% by default)
+ * do not overlap, and the score has moved beyond the threshold into the wrong direction.
+ * A benchmark of the baseline that has not run fails the gate as well, unless it is not selected by
+ * the include pattern that was passed to JMH, so a renamed or broken benchmark cannot slip through.
+ * With --record the result file replaces the baseline, after a deliberate change of performance.
+ */
+public class BenchmarkGate {
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10.0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: java BenchmarkGate.java baseline.json result.json [threshold-percent] [--include=regex] [--record]");
+            System.exit(2);
+        }
+        Path baselinePath = Path.of(args[0]);
+        Path resultPath = Path.of(args[1]);
+        double threshold = args.length > 2 && !args[2].startsWith("--")
+                ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        // like JMH, a benchmark is selected when the pattern is found anywhere in its name
+        Pattern include = Arrays.stream(args).filter(arg -> arg.startsWith("--include="))
+                .map(arg -> Pattern.compile(arg.substring("--include=".length())))
+                .findFirst().orElse(Pattern.compile(""));
+
+        if (Arrays.asList(args).contains("--record") || !Files.exists(baselinePath)) {
+            Files.createDirectories(baselinePath.toAbsolutePath().getParent());
+            Files.copy(resultPath, baselinePath, StandardCopyOption.REPLACE_EXISTING);
+            System.out.printf("Recorded %s as the new baseline %s\n", resultPath, baselinePath);
+            return;
+        }
+
+        Map<String, Score> baseline = readScores(baselinePath);
+        Map<String, Score> current = readScores(resultPath);
+
+        int numRegressions = 0;
+        int numMissing = 0;
+        System.out.printf("%-70s %14s %14s %9s  %s\n", "Benchmark", "Baseline", "Current", "Change", "Verdict");
+        for (Map.Entry<String, Score> e : baseline.entrySet()) {
+            Score base = e.getValue();
+            Score now = current.get(e.getKey());
+            if (now == null) {
+                // the parameters of a benchmark are not part of the name that JMH matches
+                boolean isSelected = include.matcher(e.getKey().split(":", 2)[0]).find();
+                if (isSelected) numMissing++;
+                System.out.printf("%-70s %14.3f %14s %9s  %s\n", e.getKey(), base.score, "-", "-",
+                        isSelected ? "MISSING" : "not selected");
+                continue;
+            }
+            String verdict = now.compareTo(base, threshold);
+            if (verdict.equals("REGRESSED")) numRegressions++;
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%%  %s %s\n", e.getKey(), base.score, now.score,
+                    100.0 * (now.score - base.score) / base.score, verdict, now.unit);
+        }
+        for (String benchmark : current.keySet()) {
+            if (!baseline.containsKey(benchmark)) {
+                System.out.printf("%-70s %14s %14.3f %9s  %s\n", benchmark, "-", current.get(benchmark).score, "-", "no baseline");
+            }
+        }
+
+        if (numMissing > 0) {
+            System.out.printf("%d benchmark(s) of %s have not run\n", numMissing, baselinePath);
+        }
+        if (numRegressions > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.1f%% against %s\n", numRegressions, threshold, baselinePath);
+        }
+        if (numMissing > 0 || numRegressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * the primary metric of one benchmark run together with its confidence interval
+     */
+    private static class Score {
+        final double score, low, high;
+        final String unit;
+        final boolean higherIsBetter;
+
+        Score(double score, double low, double high, String unit, String mode) {
+            this.score = score;
+            // a single measurement iteration yields no confidence interval
+            this.low = Double.isNaN(low) ? score : low;
+            this.high = Double.isNaN(high) ? score : high;
+            this.unit = unit;
+            this.higherIsBetter = mode.equals("thrpt");
+        }
+
+        String compareTo(Score base, double thresholdPercent) {
+            double limit = thresholdPercent / 100.0;
+            boolean worse = higherIsBetter
+                    ? high < base.low && score < base.score * (1 - limit)
+                    : low > base.high && score > base.score * (1 + limit);
+            boolean better = higherIsBetter
+                    ? low > base.high && score > base.score * (1 + limit)
+                    : high < base.low && score < base.score * (1 - limit);
+            return worse ? "REGRESSED" : better ? "improved" : "ok";
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Score> readScores(Path path) throws IOException {
+        Map<String, Score> scores = new TreeMap<>();
+        for (Object run : (List<Object>) new JsonReader(Files.readString(path)).readValue()) {
+            Map<String, Object> result = (Map<String, Object>) run;
+            Map<String, Object> metric = (Map<String, Object>) result.get("primaryMetric");
+            List<Object> confidence = (List<Object>) metric.get("scoreConfidence");
+
+            // parameterised benchmarks are identified by their parameter values as well
+            StringBuilder name = new StringBuilder((String) result.get("benchmark"));
+            Map<String, Object> params = (Map<String, Object>) result.get("params");
+            if (params != null) {
+                new TreeMap<>(params).forEach((key, value) -> name.append(':').append(key).append('=').append(value));
+            }
+            scores.put(name.toString(), new Score(toDouble(metric.get("score")),
+                    toDouble(confidence.get(0)), toDouble(confidence.get(1)),
+                    (String) metric.get("scoreUnit"), (String) result.get("mode")));
+        }
+        return scores;
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof Double ? (Double) value : Double.parseDouble(value.toString());
+    }
+
+    /**
+     * minimal reader for the json documents that JMH produces
+     * (objects, arrays, strings, numbers and the "NaN" strings that JMH writes for missing values)
+     */
+    private static class JsonReader {
+        private final String text;
+        private int pos = 0;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            char c = text.charAt(pos);
+            if (c == '{') return readObject();
+            if (c == '[') return readArray();
+            if (c == '"') return readString();
+            if (text.startsWith("true", pos)) { pos += 4; return Boolean.TRUE; }
+            if (text.startsWith("false", pos)) { pos += 5; return Boolean.FALSE; }
+            if (text.startsWith("null", pos)) { pos += 4; return null; }
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) pos++;
+            return Double.parseDouble(text.substring(start, pos));
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            pos++;
+            skipWhitespace();
+            while (text.charAt(pos) != '}') {
+                String key = readString();
+                skipWhitespace();
+                pos++; // ':'
+                object.put(key, readValue());
+                skipWhitespace();
+                if (text.charAt(pos) == ',') pos++;
+                skipWhitespace();
+            }
+            pos++;
+            return object;
+        }
+
+        private List<Object> readArray() {
+            List<Object> array = new ArrayList<>();
+            pos++;
+            skipWhitespace();
+            while (text.charAt(pos) != ']') {
+                array.add(readValue());
+                skipWhitespace();
+                if (text.charAt(pos) == ',') pos++;
+                skipWhitespace();
+            }
+            pos++;
+            return array;
+        }
+
+        private String readString() {
+            skipWhitespace();
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            while (text.charAt(pos) != '"') {
+                char c = text.charAt(pos++);
+                if (c == '\\') {
+                    c = text.charAt(pos++);
+                    if (c == 'u') {
+                        c = (char) Integer.parseInt(text.substring(pos, pos + 4), 16);
+                        pos += 4;
+                    } else if (c == 'n') c = '\n';
+                    else if (c == 't') c = '\t';
+                }
+                sb.append(c);
+            }
+            pos++;
+            return sb.toString();
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+    }
+}